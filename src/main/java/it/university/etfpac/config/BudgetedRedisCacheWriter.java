@@ -0,0 +1,276 @@
+package it.university.etfpac.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writer delle cache Redis con budget in byte per cache.
+ *
+ * Per le cache con budget ogni scrittura viene registrata in Redis (dimensione per chiave, totale e
+ * scadenza), quindi il conteggio è condiviso tra i nodi. Le voci più grandi di
+ * {@link CacheBudget#maxEntryBytes()} non vengono scritte; se il totale supera
+ * {@link CacheBudget#maxBytes()} si eliminano le voci più vicine alla scadenza. Lettura della
+ * dimensione precedente, aggiornamento, pulizia delle voci scadute e scelta di quelle da eliminare
+ * avvengono in un unico script Lua: scritture concorrenti da più nodi non possono contare due volte
+ * la stessa voce e ogni scrittura costa un solo round trip in più. Le chiavi di conteggio di una
+ * cache condividono lo slot ({@code {nome}}), requisito degli script in Redis Cluster.
+ * Le cache senza budget passano direttamente al writer sottostante.
+ */
+@Slf4j
+public class BudgetedRedisCacheWriter implements RedisCacheWriter {
+
+    public static final String EVICTIONS_COUNTER = "etfpac.cache.evictions";
+    public static final String USED_BYTES_GAUGE = "etfpac.cache.budget.used";
+    public static final String LIMIT_BYTES_GAUGE = "etfpac.cache.budget.limit";
+
+    private static final String ACCOUNTING_PREFIX = "etfpac:cache-budget:";
+
+    /**
+     * KEYS: voci per scadenza, dimensioni, totale. ARGV: voce, dimensione, scadenza, ora, budget.
+     * Restituisce il totale aggiornato seguito dalle voci da eliminare per rientrare nel budget.
+     */
+    private static final RedisScript<List<String>> ACCOUNT_SCRIPT = listScript("""
+            local function release(entry)
+                local size = tonumber(redis.call('HGET', KEYS[2], entry)) or 0
+                redis.call('HDEL', KEYS[2], entry)
+                return size
+            end
+            local total = (tonumber(redis.call('GET', KEYS[3])) or 0) + tonumber(ARGV[2]) - release(ARGV[1])
+            redis.call('HSET', KEYS[2], ARGV[1], ARGV[2])
+            redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1])
+            for _, entry in ipairs(redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[4])) do
+                redis.call('ZREM', KEYS[1], entry)
+                total = total - release(entry)
+            end
+            local result = {''}
+            while total > tonumber(ARGV[5]) do
+                local oldest = redis.call('ZPOPMIN', KEYS[1])
+                if #oldest == 0 then break end
+                total = total - release(oldest[1])
+                table.insert(result, oldest[1])
+            end
+            if redis.call('ZCARD', KEYS[1]) == 0 then total = 0 end
+            result[1] = string.format('%d', total)
+            redis.call('SET', KEYS[3], result[1])
+            return result
+            """);
+
+    /**
+     * KEYS: voci per scadenza, dimensioni, totale. ARGV: voce. Restituisce il totale aggiornato.
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of("""
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            local size = tonumber(redis.call('HGET', KEYS[2], ARGV[1])) or 0
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            return redis.call('DECRBY', KEYS[3], size)
+            """, Long.class);
+
+    /**
+     * Budget di una cache: memoria totale e dimensione massima di una singola voce
+     */
+    public record CacheBudget(long maxBytes, long maxEntryBytes) {
+    }
+
+    private final RedisCacheWriter delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry registry;
+    private final Map<String, CacheBudget> budgets;
+    private final Map<String, AtomicLong> usedBytes;
+
+    public BudgetedRedisCacheWriter(RedisCacheWriter delegate, StringRedisTemplate redisTemplate,
+                                    MeterRegistry registry, Map<String, CacheBudget> budgets) {
+        this(delegate, redisTemplate, registry, Map.copyOf(budgets), new ConcurrentHashMap<>());
+        budgets.forEach((cache, budget) -> {
+            AtomicLong used = usedBytes.computeIfAbsent(cache, name -> new AtomicLong());
+            Gauge.builder(USED_BYTES_GAUGE, used, AtomicLong::get)
+                    .description("Byte occupati dalla cache secondo l'ultimo conteggio letto da questo nodo")
+                    .baseUnit("bytes")
+                    .tag("cache", cache)
+                    .register(registry);
+            Gauge.builder(LIMIT_BYTES_GAUGE, budget, CacheBudget::maxBytes)
+                    .description("Budget in byte della cache")
+                    .baseUnit("bytes")
+                    .tag("cache", cache)
+                    .register(registry);
+        });
+    }
+
+    private BudgetedRedisCacheWriter(RedisCacheWriter delegate, StringRedisTemplate redisTemplate, MeterRegistry registry,
+                                     Map<String, CacheBudget> budgets, Map<String, AtomicLong> usedBytes) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.registry = registry;
+        this.budgets = budgets;
+        this.usedBytes = usedBytes;
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        CacheBudget budget = budgets.get(name);
+        if (budget != null && value.length > budget.maxEntryBytes()) {
+            rejectOversize(name, key, value.length);
+            return;
+        }
+        delegate.put(name, key, value, ttl);
+        account(name, budget, key, value.length, ttl);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(String name, byte[] key, byte[] value, Duration ttl) {
+        CacheBudget budget = budgets.get(name);
+        if (budget != null && value.length > budget.maxEntryBytes()) {
+            rejectOversize(name, key, value.length);
+            return CompletableFuture.completedFuture(null);
+        }
+        return delegate.store(name, key, value, ttl)
+                .thenRun(() -> account(name, budget, key, value.length, ttl));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        CacheBudget budget = budgets.get(name);
+        if (budget != null && value.length > budget.maxEntryBytes()) {
+            rejectOversize(name, key, value.length);
+            return null;
+        }
+        byte[] existing = delegate.putIfAbsent(name, key, value, ttl);
+        if (existing == null) {
+            account(name, budget, key, value.length, ttl);
+        }
+        return existing;
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key, Duration ttl) {
+        return delegate.get(name, key, ttl);
+    }
+
+    @Override
+    public boolean supportsAsyncRetrieve() {
+        return delegate.supportsAsyncRetrieve();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> retrieve(String name, byte[] key, Duration ttl) {
+        return delegate.retrieve(name, key, ttl);
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+        if (budgets.containsKey(name)) {
+            forget(name, toString(key));
+        }
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+        if (budgets.containsKey(name)) {
+            // La pulizia riguarda normalmente l'intera cache: si azzera il conteggio
+            redisTemplate.delete(accountingKeys(name));
+            usedBytes.get(name).set(0);
+        }
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new BudgetedRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector),
+                redisTemplate, registry, budgets, usedBytes);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private void account(String name, CacheBudget budget, byte[] key, int size, Duration ttl) {
+        if (budget == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            long expiresAt = ttl != null && !ttl.isZero() && !ttl.isNegative() ? now + ttl.toMillis() : Long.MAX_VALUE;
+
+            List<String> result = redisTemplate.execute(ACCOUNT_SCRIPT, accountingKeys(name), toString(key),
+                    Integer.toString(size), Long.toString(expiresAt), Long.toString(now), Long.toString(budget.maxBytes()));
+            if (result == null || result.isEmpty()) {
+                return;
+            }
+            usedBytes.get(name).set(Long.parseLong(result.get(0)));
+            for (String evicted : result.subList(1, result.size())) {
+                delegate.remove(name, evicted.getBytes(StandardCharsets.UTF_8));
+                evictionCounter(name, "budget").increment();
+            }
+        } catch (RuntimeException e) {
+            // Il conteggio non deve mai far fallire la scrittura in cache
+            log.warn("Aggiornamento budget della cache {} fallito: {}", name, e.getMessage());
+        }
+    }
+
+    private void forget(String name, String entry) {
+        try {
+            Long total = redisTemplate.execute(RELEASE_SCRIPT, accountingKeys(name), entry);
+            usedBytes.get(name).set(total != null ? total : 0);
+        } catch (RuntimeException e) {
+            log.warn("Aggiornamento budget della cache {} fallito: {}", name, e.getMessage());
+        }
+    }
+
+    private void rejectOversize(String name, byte[] key, int size) {
+        log.debug("Voce di {} byte non salvata nella cache {}: supera il limite per voce", size, name);
+        // Un eventuale valore precedente per la stessa chiave non è più valido
+        remove(name, key);
+        evictionCounter(name, "oversize").increment();
+    }
+
+    private Counter evictionCounter(String name, String reason) {
+        return Counter.builder(EVICTIONS_COUNTER)
+                .description("Voci eliminate o non salvate per rispettare il budget della cache")
+                .tag("cache", name)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static String toString(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Voci per scadenza, dimensioni e totale, nell'ordine atteso dagli script
+     */
+    private static List<String> accountingKeys(String name) {
+        String prefix = ACCOUNTING_PREFIX + "{" + name + "}:";
+        return List.of(prefix + "entries", prefix + "sizes", prefix + "total");
+    }
+
+    @SuppressWarnings("unchecked") // RedisScript.of accetta solo il tipo grezzo List
+    private static RedisScript<List<String>> listScript(String script) {
+        return (RedisScript<List<String>>) (RedisScript<?>) RedisScript.of(script, List.class);
+    }
+}
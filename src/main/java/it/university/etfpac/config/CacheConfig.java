@@ -1,15 +1,18 @@
 package it.university.etfpac.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.interceptor.CacheErrorHandler;
 import org.springframework.cache.interceptor.SimpleCacheErrorHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -21,31 +24,60 @@ import java.util.Map;
 @EnableCaching
 public class CacheConfig {
 
+    private static final long MB = 1024 * 1024;
+    private static final long KB = 1024;
+
+    // Sotto questa dimensione la compressione LZ4 non ripaga il costo
+    private static final int COMPRESSION_THRESHOLD_BYTES = 1024;
+
     @Bean
-    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public RedisCacheManager cacheManager(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate,
+                                          MeterRegistry meterRegistry) {
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1))
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()));
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                        new CompactRedisSerializer(COMPRESSION_THRESHOLD_BYTES)));
 
         Map<String, RedisCacheConfiguration> cacheConfigurations = new HashMap<>();
 
-        // Cache per ETF con una lunga durata
-        cacheConfigurations.put("etfs", defaultConfig.entryTtl(Duration.ofHours(24)));
-        cacheConfigurations.put("etf", defaultConfig.entryTtl(Duration.ofHours(24)));
-
-        // Cache per simulazioni con una media durata
-        cacheConfigurations.put("simulations", defaultConfig.entryTtl(Duration.ofHours(2)));
+        // Gli ETF sono serviti dal catalogo in memoria (ETFCatalog), non da Redis.
+        // Simulazioni invalidate a ogni modifica da CacheInvalidator e messe in cache solo in stato finale:
+        // il TTL è solo un limite di sicurezza
+        cacheConfigurations.put("simulations", defaultConfig.entryTtl(Duration.ofHours(12)));
+        // Portfolio invalidati a ogni modifica, ma il nome del proprietario è copiato dall'utente, che non
+        // pubblica eventi: il TTL limita quanto a lungo resta visibile un nome vecchio
+        cacheConfigurations.put("portfolios", defaultConfig.entryTtl(Duration.ofHours(1)));
 
         // Cache per calcoli costosi con una breve durata
         cacheConfigurations.put("calculations", defaultConfig.entryTtl(Duration.ofMinutes(30)));
 
-        // Cache per portfolio con una media durata
-        cacheConfigurations.put("portfolios", defaultConfig.entryTtl(Duration.ofHours(1)));
+        // Template per profilo di rischio: invalidati alla modifica di un template o del catalogo, riscaldati dal
+        // CacheWarmer; stesso limite dei portfolio per il nome del proprietario
+        cacheConfigurations.put("templates", defaultConfig.entryTtl(Duration.ofHours(1)));
+
+        // Cache per ottimizzazioni: la chiave include la versione del catalogo
+        cacheConfigurations.put("optimizations", defaultConfig.entryTtl(Duration.ofHours(24)));
+
+        // Cache dei backtest: contiene solo il risultato compatto, la serie e le viste derivate si ricalcolano
+        cacheConfigurations.put("backtest", defaultConfig.entryTtl(Duration.ofHours(6)));
+
+        // Budget in byte delle cache con payload grandi o numerosi
+        Map<String, BudgetedRedisCacheWriter.CacheBudget> budgets = new HashMap<>();
+        budgets.put("backtest", new BudgetedRedisCacheWriter.CacheBudget(64 * MB, 256 * KB));
+        budgets.put("calculations", new BudgetedRedisCacheWriter.CacheBudget(128 * MB, 4 * MB));
+        budgets.put("optimizations", new BudgetedRedisCacheWriter.CacheBudget(32 * MB, 1 * MB));
+
+        RedisCacheWriter cacheWriter = new BudgetedRedisCacheWriter(
+                // SCAN invece di KEYS per gli svuotamenti allEntries: non blocca Redis sulle cache grandi
+                RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory, BatchStrategies.scan(1000)),
+                redisTemplate, meterRegistry, budgets);
 
-        return RedisCacheManager.builder(connectionFactory)
+        return RedisCacheManager.builder(cacheWriter)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
+                // Statistiche hit/miss esposte da Actuator come cache.gets per nome cache
+                .enableStatistics()
                 .build();
     }
 
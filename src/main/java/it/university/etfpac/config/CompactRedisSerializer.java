@@ -0,0 +1,112 @@
+package it.university.etfpac.config;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializer compatto per i valori delle cache Redis.
+ *
+ * I valori sono scritti in Smile (JSON binario: nomi dei campi ripetuti sostituiti da riferimenti,
+ * numeri in forma binaria) con le stesse informazioni di tipo di {@link GenericJackson2JsonRedisSerializer},
+ * così in lettura si ricostruisce la classe DTO originale. Oltre {@code compressionThreshold} byte il
+ * payload viene compresso con LZ4. Il primo byte indica il formato; i valori scritti dal vecchio
+ * serializer JSON non sono leggibili e vengono trattati come miss dall'error handler della cache.
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte FORMAT_SMILE = 1;
+    private static final byte FORMAT_SMILE_LZ4 = 2;
+    private static final int LZ4_HEADER_BYTES = 1 + Integer.BYTES;
+
+    private final ObjectMapper mapper;
+    private final int compressionThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    public CompactRedisSerializer(int compressionThreshold) {
+        this.mapper = createMapper();
+        this.compressionThreshold = compressionThreshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new SmileMapper();
+        mapper.registerModule(new JavaTimeModule());
+        // Un campo rimosso da un DTO non deve invalidare tutte le voci già in cache
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        // Tipi ricostruibili solo tra le classi dell'applicazione e del JDK
+        mapper.activateDefaultTyping(BasicPolymorphicTypeValidator.builder()
+                        .allowIfSubType("it.university.etfpac.")
+                        .allowIfSubType("java.")
+                        .allowIfSubType("org.springframework.cache.support.")
+                        .build(),
+                ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(mapper, null);
+        return mapper;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+
+        byte[] smile;
+        try {
+            smile = mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Serializzazione del valore in cache fallita: " + e.getMessage(), e);
+        }
+
+        if (smile.length < compressionThreshold) {
+            byte[] plain = new byte[smile.length + 1];
+            plain[0] = FORMAT_SMILE;
+            System.arraycopy(smile, 0, plain, 1, smile.length);
+            return plain;
+        }
+
+        byte[] compressed = new byte[LZ4_HEADER_BYTES + compressor.maxCompressedLength(smile.length)];
+        ByteBuffer.wrap(compressed).put(FORMAT_SMILE_LZ4).putInt(smile.length);
+        int length = compressor.compress(smile, 0, smile.length, compressed, LZ4_HEADER_BYTES);
+        byte[] result = new byte[LZ4_HEADER_BYTES + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        try {
+            return switch (bytes[0]) {
+                case FORMAT_SMILE -> mapper.readValue(bytes, 1, bytes.length - 1, Object.class);
+                case FORMAT_SMILE_LZ4 -> {
+                    int length = ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+                    byte[] smile = decompressor.decompress(bytes, LZ4_HEADER_BYTES, length);
+                    yield mapper.readValue(smile, Object.class);
+                }
+                default -> throw new SerializationException("Formato del valore in cache non riconosciuto: " + bytes[0]);
+            };
+        } catch (IOException | LZ4Exception e) {
+            throw new SerializationException("Deserializzazione del valore in cache fallita: " + e.getMessage(), e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package it.university.etfpac.controller;
 import it.university.etfpac.dto.request.BacktestRequest;
 import it.university.etfpac.dto.response.ApiResponse;
 import it.university.etfpac.service.BacktestService;
+import it.university.etfpac.service.ResourceVersion;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -11,6 +12,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Map;
 
@@ -48,9 +50,15 @@ public class BacktestController {
     @Operation(summary = "Risultati backtest", description = "Recupera risultati di un backtest precedente")
     @GetMapping("/{backtestId}")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getBacktestResults(
-            @Parameter(description = "ID del backtest") @PathVariable Long backtestId) {
+            @Parameter(description = "ID del backtest") @PathVariable Long backtestId, WebRequest webRequest) {
         log.info("GET /api/v1/backtest/{} - Recupero risultati backtest", backtestId);
 
+        // Un backtest salvato non cambia: la revalidazione non legge mai report e serie
+        ResourceVersion version = backtestService.getBacktestVersion(backtestId);
+        if (webRequest.checkNotModified(version.etag(), version.lastModifiedMillis())) {
+            return null;
+        }
+
         Map<String, Object> response = backtestService.getBacktestResults(backtestId);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
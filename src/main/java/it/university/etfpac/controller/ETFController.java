@@ -1,16 +1,20 @@
 package it.university.etfpac.controller;
 
+import it.university.etfpac.dto.request.ETFScreenRequest;
 import it.university.etfpac.dto.response.ApiResponse;
 import it.university.etfpac.dto.response.ETFResponse;
 import it.university.etfpac.service.ETFService;
+import it.university.etfpac.service.ResourceVersion;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -25,12 +29,18 @@ public class ETFController {
 
     private final ETFService etfService;
 
-    @Operation(summary = "Lista tutti gli ETF", description = "Restituisce l'elenco completo degli ETF disponibili")
+    @Operation(summary = "Lista tutti gli ETF",
+            description = "Restituisce l'elenco completo degli ETF disponibili; supporta If-None-Match / If-Modified-Since sulla versione del catalogo")
     @GetMapping
-    @Cacheable("etfs")
-    public ResponseEntity<ApiResponse<List<ETFResponse>>> getAllETFs() {
+    public ResponseEntity<ApiResponse<List<ETFResponse>>> getAllETFs(WebRequest webRequest) {
         log.info("GET /api/v1/etfs - Recupero tutti gli ETF");
 
+        // Se il client ha già questa versione risponde 304; altrimenti ETag e Last-Modified sono già impostati
+        ResourceVersion version = etfService.getCatalogVersion();
+        if (webRequest.checkNotModified(version.etag(), version.lastModifiedMillis())) {
+            return null;
+        }
+
         List<ETFResponse> response = etfService.getAllETFs();
         return ResponseEntity.ok(ApiResponse.success(response,
                 String.format("Trovati %d ETF", response.size())));
@@ -38,11 +48,15 @@ public class ETFController {
 
     @Operation(summary = "Recupera ETF per ID", description = "Restituisce i dettagli di un ETF specifico")
     @GetMapping("/{id}")
-    @Cacheable(value = "etf", key = "#id")
     public ResponseEntity<ApiResponse<ETFResponse>> getETFById(
-            @Parameter(description = "ID dell'ETF") @PathVariable String id) {
+            @Parameter(description = "ID dell'ETF") @PathVariable String id, WebRequest webRequest) {
         log.info("GET /api/v1/etfs/{} - Recupero ETF", id);
 
+        ResourceVersion version = etfService.getCatalogVersion();
+        if (webRequest.checkNotModified(version.etag(), version.lastModifiedMillis())) {
+            return null;
+        }
+
         ETFResponse response = etfService.getETFById(id);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
@@ -61,12 +75,11 @@ public class ETFController {
 
     @Operation(summary = "ETF con migliori performance", description = "Restituisce i top ETF per performance")
     @GetMapping("/top-performing")
-    @Cacheable("top-etfs")
     public ResponseEntity<ApiResponse<List<ETFResponse>>> getTopPerformingETFs(
             @RequestParam(defaultValue = "10") int limit) {
         log.info("GET /api/v1/etfs/top-performing - Recupero top {} ETF per performance", limit);
 
-        List<ETFResponse> response = etfService.getTopPerformingETFs();
+        List<ETFResponse> response = etfService.getTopPerformingETFs(limit);
         return ResponseEntity.ok(ApiResponse.success(response,
                 String.format("Top %d ETF per performance", response.size())));
     }
@@ -82,4 +95,16 @@ public class ETFController {
         return ResponseEntity.ok(ApiResponse.success(response,
                 String.format("Trovati %d ETF con spese ≤ %.2f%%", response.size(), maxExpense)));
     }
-}
\ No newline at end of file
+
+    @Operation(summary = "Screener ETF",
+            description = "Filtra gli ETF combinando più criteri e ordina per qualsiasi metrica con paginazione")
+    @PostMapping("/screen")
+    public ResponseEntity<ApiResponse<Page<ETFResponse>>> screenETFs(
+            @Valid @RequestBody ETFScreenRequest request) {
+        log.info("POST /api/v1/etfs/screen - Screening ETF ordinati per {} {}", request.getSortBy(), request.getDirection());
+
+        Page<ETFResponse> response = etfService.screenETFs(request);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Trovati %d ETF", response.getTotalElements())));
+    }
+}
@@ -1,9 +1,13 @@
 package it.university.etfpac.controller;
 
+import it.university.etfpac.dto.request.EfficientFrontierRequest;
 import it.university.etfpac.dto.request.PortfolioRequest;
 import it.university.etfpac.dto.response.ApiResponse;
+import it.university.etfpac.dto.response.CursorPage;
+import it.university.etfpac.dto.response.EfficientFrontierResponse;
 import it.university.etfpac.dto.response.PortfolioResponse;
 import it.university.etfpac.service.PortfolioService;
+import it.university.etfpac.service.ResourceVersion;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -13,6 +17,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -46,9 +51,15 @@ public class PortfolioController {
     @Operation(summary = "Recupera portfolio per ID", description = "Restituisce i dettagli completi di un portfolio")
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<PortfolioResponse>> getPortfolioById(
-            @Parameter(description = "ID del portfolio") @PathVariable Long id) {
+            @Parameter(description = "ID del portfolio") @PathVariable Long id, WebRequest webRequest) {
         log.info("GET /api/v1/portfolios/{} - Recupero portfolio", id);
 
+        // Se il client ha già questa versione risponde 304; altrimenti ETag e Last-Modified sono già impostati
+        ResourceVersion version = portfolioService.getPortfolioVersion(id);
+        if (webRequest.checkNotModified(version.etag(), version.lastModifiedMillis())) {
+            return null;
+        }
+
         PortfolioResponse response = portfolioService.getPortfolioById(id);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
@@ -65,6 +76,20 @@ public class PortfolioController {
                 String.format("Trovati %d portfolio", response.size())));
     }
 
+    @Operation(summary = "Scorri portfolio utente", description = "Portfolio dell'utente dal più recente con paginazione a cursore, senza conteggio totale")
+    @GetMapping("/user/{userId}/scroll")
+    public ResponseEntity<ApiResponse<CursorPage<PortfolioResponse>>> scrollUserPortfolios(
+            @Parameter(description = "ID dell'utente") @PathVariable Long userId,
+            @Parameter(description = "Cursore restituito dalla pagina precedente; assente per la prima pagina")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        log.info("GET /api/v1/portfolios/user/{}/scroll - Recupero portfolio utente (size: {})", userId, size);
+
+        CursorPage<PortfolioResponse> response = portfolioService.getUserPortfoliosPage(userId, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Trovati %d portfolio", response.getSize())));
+    }
+
     @Operation(summary = "Aggiorna portfolio", description = "Modifica un portfolio esistente")
     @PutMapping("/{id}")
     public ResponseEntity<ApiResponse<PortfolioResponse>> updatePortfolio(
@@ -96,6 +121,17 @@ public class PortfolioController {
         return ResponseEntity.ok(ApiResponse.success(optimization, "Ottimizzazione completata"));
     }
 
+    @Operation(summary = "Frontiera efficiente", description = "Calcola la frontiera media-varianza long-only con portafogli di varianza minima e massimo Sharpe")
+    @PostMapping("/efficient-frontier")
+    public ResponseEntity<ApiResponse<EfficientFrontierResponse>> calculateEfficientFrontier(
+            @Valid @RequestBody EfficientFrontierRequest request) {
+        log.info("POST /api/v1/portfolios/efficient-frontier - Calcolo frontiera efficiente");
+
+        EfficientFrontierResponse frontier = portfolioService.calculateEfficientFrontier(request);
+        return ResponseEntity.ok(ApiResponse.success(frontier,
+                String.format("Frontiera calcolata con %d punti", frontier.getFrontier().size())));
+    }
+
     // NUOVI ENDPOINT AGGIUNTI
 
     @Operation(summary = "Lista template portfolio", description = "Restituisce i template di portfolio predefiniti")
@@ -231,7 +267,7 @@ public class PortfolioController {
                 .body(ApiResponse.success(response, "Template salvato con successo"));
     }
 
-    @Operation(summary = "Statistiche portfolio utente", description = "Restituisce statistiche aggregate sui portfolio di un utente")
+    @Operation(summary = "Statistiche portfolio utente", description = "Restituisce le statistiche precalcolate di un utente su portfolio e simulazioni")
     @GetMapping("/user/{userId}/statistics")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getUserPortfolioStatistics(
             @Parameter(description = "ID dell'utente") @PathVariable Long userId) {
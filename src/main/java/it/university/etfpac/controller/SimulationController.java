@@ -1,8 +1,17 @@
 package it.university.etfpac.controller;
 
+import it.university.etfpac.dto.request.BatchSimulationRequest;
+import it.university.etfpac.dto.request.ScenarioComparisonRequest;
 import it.university.etfpac.dto.request.SimulationRequest;
 import it.university.etfpac.dto.response.ApiResponse;
+import it.university.etfpac.dto.response.BatchSimulationResponse;
+import it.university.etfpac.dto.response.CursorPage;
+import it.university.etfpac.dto.response.DirectSimulationResponse;
+import it.university.etfpac.dto.response.MonteCarloResponse;
+import it.university.etfpac.dto.response.ScenarioComparisonResponse;
 import it.university.etfpac.dto.response.SimulationResponse;
+import it.university.etfpac.service.ResourceVersion;
+import it.university.etfpac.service.ScenarioTrafficRecorder;
 import it.university.etfpac.service.SimulationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,6 +25,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -29,15 +39,17 @@ import java.util.Map;
 public class SimulationController {
 
     private final SimulationService simulationService;
+    private final ScenarioTrafficRecorder scenarioTrafficRecorder;
 
     @Operation(summary = "Esegui simulazione", description = "Esegue una nuova simulazione con i parametri forniti")
     @PostMapping("/run")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> runSimulation(
+    public ResponseEntity<ApiResponse<DirectSimulationResponse>> runSimulation(
             @Valid @RequestBody SimulationRequest request) {
         log.info("POST /api/v1/simulations/run - Esecuzione simulazione");
 
         try {
-            Map<String, Object> result = simulationService.runSimulationDirect(request);
+            DirectSimulationResponse result = simulationService.runSimulationDirect(request);
+            scenarioTrafficRecorder.record(request);
             return ResponseEntity.ok(ApiResponse.success(result, "Simulazione completata"));
         } catch (Exception e) {
             log.error("Errore durante simulazione", e);
@@ -46,6 +58,31 @@ public class SimulationController {
         }
     }
 
+    @Operation(summary = "Simulazione Monte Carlo",
+            description = "Distribuzione del valore del piano su più percorsi, con variabili antitetiche, variabile di controllo e campionamento Sobol opzionali")
+    @PostMapping("/monte-carlo")
+    public ResponseEntity<ApiResponse<MonteCarloResponse>> runMonteCarlo(
+            @Valid @RequestBody SimulationRequest request) {
+        log.info("POST /api/v1/simulations/monte-carlo - Simulazione Monte Carlo");
+
+        MonteCarloResponse response = simulationService.runMonteCarlo(request);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Monte Carlo completato su %d percorsi", response.getPaths())));
+    }
+
+    @Operation(summary = "Esegui simulazioni in batch",
+            description = "Esegue in parallelo più scenari di simulazione e restituisce risultati ed errori per scenario")
+    @PostMapping("/run-batch")
+    public ResponseEntity<ApiResponse<BatchSimulationResponse>> runSimulationBatch(
+            @Valid @RequestBody BatchSimulationRequest request) {
+        log.info("POST /api/v1/simulations/run-batch - Esecuzione batch di {} scenari", request.getScenarios().size());
+
+        BatchSimulationResponse response = simulationService.runSimulationBatch(request);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Batch completato: %d/%d scenari riusciti",
+                        response.getSucceeded(), response.getTotalScenarios())));
+    }
+
     @Operation(summary = "Salva simulazione", description = "Salva i risultati di una simulazione")
     @PostMapping
     public ResponseEntity<ApiResponse<SimulationResponse>> saveSimulation(
@@ -65,9 +102,15 @@ public class SimulationController {
     @Operation(summary = "Recupera simulazione per ID", description = "Restituisce i dettagli di una simulazione salvata")
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<SimulationResponse>> getSimulationById(
-            @Parameter(description = "ID della simulazione") @PathVariable Long id) {
+            @Parameter(description = "ID della simulazione") @PathVariable Long id, WebRequest webRequest) {
         log.info("GET /api/v1/simulations/{} - Recupero simulazione", id);
 
+        // Se il client ha già questa versione risponde 304; altrimenti ETag e Last-Modified sono già impostati
+        ResourceVersion version = simulationService.getSimulationVersion(id);
+        if (webRequest.checkNotModified(version.etag(), version.lastModifiedMillis())) {
+            return null;
+        }
+
         SimulationResponse response = simulationService.getSimulationById(id);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
@@ -85,6 +128,19 @@ public class SimulationController {
                 String.format("Trovate %d simulazioni", response.getTotalElements())));
     }
 
+    @Operation(summary = "Scorri simulazioni", description = "Simulazioni dalla più recente con paginazione a cursore, senza conteggio totale")
+    @GetMapping("/scroll")
+    public ResponseEntity<ApiResponse<CursorPage<SimulationResponse>>> scrollSimulations(
+            @Parameter(description = "Cursore restituito dalla pagina precedente; assente per la prima pagina")
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        log.info("GET /api/v1/simulations/scroll - Recupero simulazioni (size: {})", size);
+
+        CursorPage<SimulationResponse> response = simulationService.getSimulationsPage(cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Trovate %d simulazioni", response.getSize())));
+    }
+
     @Operation(summary = "Confronta simulazioni", description = "Confronta performance di più simulazioni")
     @PostMapping("/compare")
     public ResponseEntity<ApiResponse<Map<String, Object>>> compareSimulations(
@@ -108,6 +164,18 @@ public class SimulationController {
         return ResponseEntity.ok(ApiResponse.success(comparison, "Confronto completato"));
     }
 
+    @Operation(summary = "Confronta portafogli su scenari comuni",
+            description = "Valuta più allocazioni sugli stessi scenari di mercato correlati; con lo stesso seed gli scenari già generati vengono riusati")
+    @PostMapping("/compare-scenarios")
+    public ResponseEntity<ApiResponse<ScenarioComparisonResponse>> compareOnCommonScenarios(
+            @Valid @RequestBody ScenarioComparisonRequest request) {
+        log.info("POST /api/v1/simulations/compare-scenarios - Confronto di {} portafogli", request.getPortfolios().size());
+
+        ScenarioComparisonResponse response = simulationService.compareOnCommonScenarios(request);
+        return ResponseEntity.ok(ApiResponse.success(response,
+                String.format("Confronto completato su %d scenari", response.getScenarios())));
+    }
+
     @Operation(summary = "Clona simulazione", description = "Crea una copia di una simulazione esistente")
     @PostMapping("/{id}/clone")
     public ResponseEntity<ApiResponse<SimulationResponse>> cloneSimulation(
@@ -4,6 +4,7 @@ import lombok.Data;
 import jakarta.validation.constraints.*;
 import java.time.LocalDate;
 import java.util.Map;
+import java.util.TreeMap;
 
 @Data
 public class BacktestRequest {
@@ -78,6 +79,21 @@ public class BacktestRequest {
     @Positive(message = "ID utente deve essere positivo")
     private Long userId;
 
+    /**
+     * Chiave di cache: tutti i parametri che determinano il risultato e il backtest salvato
+     */
+    public String cacheKey() {
+        return strategy
+                + "|" + period
+                + "|" + startDate
+                + "|" + endDate
+                + "|" + initialAmount
+                + "|" + monthlyAmount
+                + "|" + (etfAllocation != null ? new TreeMap<>(etfAllocation) : "{}")
+                + "|" + userId
+                + "|" + name;
+    }
+
     @AssertTrue(message = "Data fine deve essere successiva a data inizio")
     public boolean isEndDateAfterStartDate() {
         if (startDate == null || endDate == null) {
@@ -0,0 +1,17 @@
+package it.university.etfpac.dto.request;
+
+import lombok.Data;
+import jakarta.validation.constraints.*;
+import java.util.List;
+
+@Data
+public class BatchSimulationRequest {
+
+    public static final int MAX_SCENARIOS = 20;
+
+    // La validazione dei singoli scenari avviene nel service, così un errore
+    // su uno scenario non fa fallire l'intero batch
+    @NotNull(message = "Scenari richiesti")
+    @Size(min = 1, max = MAX_SCENARIOS, message = "Il batch deve contenere da 1 a 20 scenari")
+    private List<SimulationRequest> scenarios;
+}
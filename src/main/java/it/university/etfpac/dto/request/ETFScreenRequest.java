@@ -0,0 +1,53 @@
+package it.university.etfpac.dto.request;
+
+import lombok.Data;
+import jakarta.validation.constraints.*;
+import java.util.Set;
+
+@Data
+public class ETFScreenRequest {
+
+    private Set<@Pattern(regexp = "(?i)LOW|MEDIUM|HIGH|VERY_HIGH",
+            message = "Livello di rischio non valido") String> risks;
+
+    @DecimalMin(value = "0.0", message = "Spesa minima non può essere negativa")
+    private Double minExpense;
+
+    @DecimalMin(value = "0.0", message = "Spesa massima non può essere negativa")
+    private Double maxExpense;
+
+    private Set<String> sectors;
+
+    private Double minSharpe;
+
+    // Perdita massima tollerata in punti percentuali (es. 35 esclude ETF con drawdown peggiore di -35%)
+    @DecimalMin(value = "0.0", message = "Drawdown massimo non può essere negativo")
+    private Double maxDrawdown;
+
+    private Double minBeta;
+    private Double maxBeta;
+
+    private Double minYtd;
+    private Double minOneYear;
+    private Double minThreeYear;
+    private Double minFiveYear;
+
+    @Pattern(regexp = "(?i)EXPENSE|BETA|SHARPE|MAX_DRAWDOWN|YTD|ONE_YEAR|THREE_YEAR|FIVE_YEAR",
+            message = "Metrica di ordinamento non valida")
+    private String sortBy = "ONE_YEAR";
+
+    @Pattern(regexp = "(?i)ASC|DESC", message = "Direzione di ordinamento non valida")
+    private String direction = "DESC";
+
+    @Min(value = 0, message = "Pagina non può essere negativa")
+    private Integer page = 0;
+
+    @Min(value = 1, message = "Dimensione pagina minima 1")
+    @Max(value = 200, message = "Dimensione pagina massima 200")
+    private Integer size = 20;
+
+    @AssertTrue(message = "La spesa minima non può superare la spesa massima")
+    public boolean isExpenseRangeValid() {
+        return minExpense == null || maxExpense == null || minExpense <= maxExpense;
+    }
+}
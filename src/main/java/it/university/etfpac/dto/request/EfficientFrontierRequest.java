@@ -0,0 +1,43 @@
+package it.university.etfpac.dto.request;
+
+import lombok.Data;
+import jakarta.validation.constraints.*;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+@Data
+public class EfficientFrontierRequest {
+
+    // Universo di ETF su cui ottimizzare; se assente viene usato l'intero catalogo
+    @Size(max = 100, message = "Massimo 100 ETF nell'universo di ottimizzazione")
+    private List<String> etfIds;
+
+    @DecimalMin(value = "1.0", message = "Peso massimo minimo 1%")
+    @DecimalMax(value = "100.0", message = "Peso massimo non può superare 100%")
+    private Double maxWeight = 100.0;
+
+    // Limiti percentuali per singolo ETF, applicati in aggiunta a maxWeight
+    private Map<String, @DecimalMin("0.0") @DecimalMax("100.0") Double> weightCaps;
+
+    @Min(value = 2, message = "Almeno 2 punti di frontiera")
+    @Max(value = 50, message = "Massimo 50 punti di frontiera")
+    private Integer points = 20;
+
+    @DecimalMin(value = "0.0", message = "Tasso risk-free non può essere negativo")
+    @DecimalMax(value = "20.0", message = "Tasso risk-free non può superare 20%")
+    private Double riskFreeRate = 2.0;
+
+    /**
+     * Chiave normalizzata (universo e vincoli ordinati) per la cache dei risultati; lista assente
+     * o vuota indicano entrambe l'intero catalogo
+     */
+    public String cacheKey() {
+        return (etfIds != null && !etfIds.isEmpty() ? new TreeSet<>(etfIds) : "ALL")
+                + "|" + maxWeight
+                + "|" + (weightCaps != null ? new TreeMap<>(weightCaps) : "{}")
+                + "|" + points
+                + "|" + riskFreeRate;
+    }
+}
@@ -0,0 +1,70 @@
+package it.university.etfpac.dto.request;
+
+import lombok.Data;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class ScenarioComparisonRequest {
+
+    public static final int MAX_PORTFOLIOS = 10;
+    public static final int MAX_SCENARIOS = 10_000;
+
+    @NotNull(message = "Portafogli richiesti")
+    @Size(min = 2, max = MAX_PORTFOLIOS, message = "Il confronto richiede da 2 a 10 portafogli")
+    @Valid
+    private List<PortfolioScenario> portfolios;
+
+    @NotNull(message = "Importo iniziale richiesto")
+    @DecimalMin(value = "100.0", message = "Importo iniziale minimo €100")
+    private Double initialAmount;
+
+    @NotNull(message = "Importo mensile richiesto")
+    @DecimalMin(value = "50.0", message = "Importo mensile minimo €50")
+    private Double monthlyAmount;
+
+    @NotNull(message = "Periodo investimento richiesto")
+    @Min(value = 6, message = "Periodo minimo 6 mesi")
+    @Max(value = 600, message = "Periodo massimo 600 mesi")
+    private Integer investmentPeriod;
+
+    @Pattern(regexp = "DCA|VALUE_AVERAGING|MOMENTUM|CONTRARIAN|SMART_BETA|TACTICAL",
+            message = "Strategia non valida")
+    private String strategy = "DCA";
+
+    @Min(value = 10, message = "Almeno 10 scenari")
+    @Max(value = MAX_SCENARIOS, message = "Massimo " + MAX_SCENARIOS + " scenari")
+    private Integer scenarios = 1000;
+
+    // Stesso seed e stesso universo ETF riusano gli scenari già generati
+    private Long seed;
+
+    @Data
+    public static class PortfolioScenario {
+
+        @NotBlank(message = "Nome portafoglio richiesto")
+        @Size(max = 100, message = "Nome non può superare 100 caratteri")
+        private String name;
+
+        @NotNull(message = "Allocazione ETF richiesta")
+        @Size(min = 1, message = "Almeno un ETF deve essere selezionato")
+        private Map<String, Double> etfAllocation;
+
+        @AssertTrue(message = "La somma delle allocazioni ETF deve essere 100% e ogni allocazione positiva")
+        public boolean isAllocationValid() {
+            if (etfAllocation == null || etfAllocation.isEmpty()) {
+                return true;
+            }
+            double sum = 0;
+            for (Double value : etfAllocation.values()) {
+                if (value == null || value < 0) {
+                    return false;
+                }
+                sum += value;
+            }
+            return Math.abs(sum - 100.0) < 0.01;
+        }
+    }
+}
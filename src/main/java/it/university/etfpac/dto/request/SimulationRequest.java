@@ -64,6 +64,22 @@ public class SimulationRequest {
     @Positive(message = "ID utente deve essere positivo")
     private Long userId;
 
+    // Parametri Monte Carlo (usati da /simulations/monte-carlo)
+    public static final int MAX_PATHS = 1_000_000;
+
+    @Min(value = 2, message = "Almeno 2 percorsi Monte Carlo")
+    @Max(value = MAX_PATHS, message = "Massimo " + MAX_PATHS + " percorsi Monte Carlo")
+    private Integer paths;
+
+    private Long seed;
+
+    private Boolean antithetic = false;
+
+    private Boolean controlVariate = false;
+
+    @Pattern(regexp = "PSEUDO|SOBOL", message = "Campionamento non valido")
+    private String sampling = "PSEUDO";
+
     @AssertTrue(message = "La somma delle allocazioni ETF deve essere 100%")
     public boolean isAllocationValid() {
         if (etfAllocation == null || etfAllocation.isEmpty()) {
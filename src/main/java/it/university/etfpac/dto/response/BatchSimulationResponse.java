@@ -0,0 +1,24 @@
+package it.university.etfpac.dto.response;
+
+import lombok.Data;
+import lombok.Builder;
+import java.util.List;
+
+@Data
+@Builder
+public class BatchSimulationResponse {
+    private Integer totalScenarios;
+    private Integer succeeded;
+    private Integer failed;
+    private List<ScenarioResult> scenarios;
+
+    @Data
+    @Builder
+    public static class ScenarioResult {
+        private Integer index;
+        private String name;
+        private Boolean success;
+        private DirectSimulationResponse result;
+        private String error;
+    }
+}
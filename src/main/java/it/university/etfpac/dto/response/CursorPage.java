@@ -0,0 +1,22 @@
+package it.university.etfpac.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Pagina della paginazione keyset: nessun totale (niente count), solo il cursore per la pagina successiva
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    // null sull'ultima pagina
+    private String nextCursor;
+}
@@ -0,0 +1,56 @@
+package it.university.etfpac.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Risultato di una simulazione non persistita; stesse chiavi JSON della risposta precedente basata su mappa
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectSimulationResponse {
+    private List<DataPoint> simulationData;
+    private Results results;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seed;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DataPoint {
+        private Integer month;
+        private Double totalValue;
+        private Double totalInvested;
+        private Double monthlyReturn;
+        private Double cumulativeReturn;
+        private Double monthlyInvestment;
+        private Double inflationAdjustedValue;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Results {
+        private Double finalValue;
+        private Double totalInvested;
+        private Double cumulativeReturn;
+        private Double volatility;
+        private Double maxDrawdown;
+        private Double sharpeRatio;
+        private Double winRate;
+        private Double annualizedReturn;
+        private Double bestMonth;
+        private Double worstMonth;
+        private Double consistency;
+        private Double calmarRatio;
+    }
+}
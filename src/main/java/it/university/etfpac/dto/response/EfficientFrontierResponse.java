@@ -0,0 +1,33 @@
+package it.university.etfpac.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EfficientFrontierResponse {
+    private String catalogVersion;
+    private List<String> universe;
+    private Double riskFreeRate;
+    private FrontierPoint minVariance;
+    private FrontierPoint maxSharpe;
+    private List<FrontierPoint> frontier;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FrontierPoint {
+        // Rendimento e volatilità annualizzati come frazione, pesi in percentuale
+        private Double expectedReturn;
+        private Double volatility;
+        private Double sharpeRatio;
+        private Map<String, Double> weights;
+    }
+}
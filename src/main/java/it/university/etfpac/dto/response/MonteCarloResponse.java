@@ -0,0 +1,49 @@
+package it.university.etfpac.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MonteCarloResponse {
+    private Integer paths;
+    private Integer months;
+    private Long seed;
+    private String sampling;
+    private Boolean antithetic;
+    private Boolean controlVariate;
+
+    // Parametri annualizzati del portafoglio usati per generare i rendimenti
+    private Double expectedReturn;
+    private Double volatility;
+
+    // Stima del valore finale medio con il relativo errore standard
+    private Double meanFinalValue;
+    private Double standardError;
+    private Double relativeStandardError;
+    private Double confidenceLow;
+    private Double confidenceHigh;
+    private Double dcaExpectedFinalValue;
+    private Double meanTotalInvested;
+    private Double probabilityOfLoss;
+
+    private List<MonthDistribution> distribution;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class MonthDistribution {
+        private Integer month;
+        private Double p5;
+        private Double p25;
+        private Double p50;
+        private Double p75;
+        private Double p95;
+    }
+}
@@ -2,6 +2,8 @@ package it.university.etfpac.dto.response;
 
 import lombok.Data;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -9,6 +11,8 @@ import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class PortfolioResponse {
     private Long id;
     private String name;
@@ -57,6 +61,8 @@ public class PortfolioResponse {
 
     @Data
     @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class ETFAllocationDetail {
         private String etfId;
         private String etfName;
@@ -70,6 +76,8 @@ public class PortfolioResponse {
 
     @Data
     @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class SimulationSummary {
         private Long simulationId;
         private String simulationName;
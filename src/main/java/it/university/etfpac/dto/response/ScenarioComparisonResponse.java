@@ -0,0 +1,37 @@
+package it.university.etfpac.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScenarioComparisonResponse {
+    private Long seed;
+    private Integer scenarios;
+    private Integer months;
+    private Integer universeSize;
+    private String strategy;
+
+    private List<PortfolioOutcome> portfolios;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PortfolioOutcome {
+        private String name;
+        private Double meanFinalValue;
+        private Double p5FinalValue;
+        private Double medianFinalValue;
+        private Double p95FinalValue;
+        private Double meanTotalInvested;
+        private Double probabilityOfLoss;
+        // Quota di scenari in cui il portafoglio chiude sopra il primo della richiesta
+        private Double probabilityBeatsFirst;
+    }
+}
@@ -2,12 +2,16 @@ package it.university.etfpac.dto.response;
 
 import lombok.Data;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class SimulationResponse {
     private Long id;
     private String name;
@@ -41,6 +45,8 @@ public class SimulationResponse {
 
     @Data
     @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class SimulationDataPoint {
         private Integer month;
         private Double totalValue;
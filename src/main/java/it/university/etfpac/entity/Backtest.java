@@ -0,0 +1,86 @@
+package it.university.etfpac.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "backtests")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Backtest {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Simulation.Strategy strategy;
+
+    private String period;
+
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;
+
+    @Column(name = "end_date", nullable = false)
+    private LocalDate endDate;
+
+    @Column(name = "initial_amount", nullable = false)
+    private Double initialAmount;
+
+    @Column(name = "monthly_amount", nullable = false)
+    private Double monthlyAmount;
+
+    @Column(name = "total_return")
+    private Double totalReturn;
+
+    @Column(name = "annualized_return")
+    private Double annualizedReturn;
+
+    private Double volatility;
+
+    @Column(name = "sharpe_ratio")
+    private Double sharpeRatio;
+
+    @Column(name = "max_drawdown")
+    private Double maxDrawdown;
+
+    @Column(name = "final_value")
+    private Double finalValue;
+
+    @Column(name = "total_invested")
+    private Double totalInvested;
+
+    // Richiesta, risultati, benchmark e metriche derivate in JSON
+    @Column(nullable = false, columnDefinition = "TEXT")
+    @ToString.Exclude
+    private String report;
+
+    // Serie mensile in JSON compresso gzip
+    @Column(nullable = false)
+    @ToString.Exclude
+    private byte[] series;
+
+    @Column(name = "series_points", nullable = false)
+    private Integer seriesPoints;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -22,7 +22,8 @@ import java.util.Map;
 @Entity
 @Table(name = "portfolios", indexes = {
         @Index(name = "idx_portfolios_user_id", columnList = "user_id"),
-        @Index(name = "idx_portfolios_name", columnList = "name")
+        @Index(name = "idx_portfolios_name", columnList = "name"),
+        @Index(name = "idx_portfolios_user_created", columnList = "user_id, is_template, created_at DESC, id DESC")
 })
 @Data
 @NoArgsConstructor
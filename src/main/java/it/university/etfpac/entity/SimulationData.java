@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "simulation_data")
@@ -43,4 +44,15 @@ public class SimulationData {
 
     @Column(name = "sharpe_ratio")
     private Double sharpeRatio;
+
+    // Chiave di partizione della tabella: determina la partizione mensile e quindi la conservazione
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
 }
\ No newline at end of file
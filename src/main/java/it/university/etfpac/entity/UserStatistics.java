@@ -0,0 +1,58 @@
+package it.university.etfpac.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Statistiche aggregate di un utente, una riga per utente, ricalcolate a ogni modifica dei suoi
+ * portfolio e delle sue simulazioni: l'endpoint delle statistiche le legge senza caricare le entità
+ */
+@Entity
+@Table(name = "user_statistics")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserStatistics {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "total_portfolios", nullable = false)
+    private Long totalPortfolios;
+
+    @Column(name = "active_portfolios", nullable = false)
+    private Long activePortfolios;
+
+    @Column(name = "total_initial_investment", nullable = false, precision = 19, scale = 2)
+    private BigDecimal totalInitialInvestment;
+
+    // Conteggi per stato e per strategia in JSON, solo le chiavi presenti
+    @Column(name = "portfolios_by_status", nullable = false, columnDefinition = "TEXT")
+    private String portfoliosByStatus;
+
+    @Column(name = "portfolios_by_strategy", nullable = false, columnDefinition = "TEXT")
+    private String portfoliosByStrategy;
+
+    @Column(name = "total_simulations", nullable = false)
+    private Long totalSimulations;
+
+    @Column(name = "simulations_by_status", nullable = false, columnDefinition = "TEXT")
+    private String simulationsByStatus;
+
+    @Column(name = "best_simulation_id")
+    private Long bestSimulationId;
+
+    @Column(name = "best_simulation_name")
+    private String bestSimulationName;
+
+    @Column(name = "best_sharpe_ratio")
+    private Double bestSharpeRatio;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,7 @@
+package it.university.etfpac.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package it.university.etfpac.monitoring;
+
+import it.university.etfpac.exception.BadRequestException;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint Actuator per registrazioni Java Flight Recorder limitate in durata e dimensione.
+ *
+ * GET /actuator/jfr stato, POST /actuator/jfr avvio, GET /actuator/jfr/dump download del file .jfr,
+ * DELETE /actuator/jfr arresto. È attiva al massimo una registrazione alla volta con il profilo
+ * "default" di JFR (overhead inferiore all'1%) più gli eventi di fase della simulazione.
+ *
+ * Le API non hanno autenticazione: l'endpoint è disattivato di default e va abilitato solo negli
+ * ambienti in cui Actuator è raggiungibile dalla rete interna ({@code management.endpoint.jfr.enabled}
+ * e {@code management.server.port} non pubblicata). Dalle registrazioni sono esclusi gli eventi che
+ * riportano variabili d'ambiente, proprietà di sistema e righe di comando, dove stanno le credenziali.
+ */
+@Component
+@Endpoint(id = "jfr", enableByDefault = false)
+@Slf4j
+public class JfrRecordingEndpoint {
+
+    private static final int DEFAULT_DURATION_SECONDS = 120;
+    private static final int MAX_DURATION_SECONDS = 900;
+    private static final int DEFAULT_MAX_SIZE_MB = 64;
+    private static final int MAX_SIZE_MB = 256;
+    private static final List<String> SENSITIVE_EVENTS = List.of(
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation", "jdk.SystemProcess");
+
+    private Recording recording;
+    private Path lastDump;
+
+    @ReadOperation
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (recording == null) {
+            status.put("state", "NONE");
+            return status;
+        }
+        status.put("id", recording.getId());
+        status.put("name", recording.getName());
+        status.put("state", recording.getState().name());
+        status.put("startTime", recording.getStartTime());
+        status.put("duration", recording.getDuration());
+        status.put("maxSizeBytes", recording.getMaxSize());
+        status.put("recordedBytes", recording.getSize());
+        return status;
+    }
+
+    @WriteOperation
+    public synchronized Map<String, Object> start(@Nullable Integer durationSeconds, @Nullable Integer maxSizeMb) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new BadRequestException("Registrazione JFR già in corso");
+        }
+        closeRecording();
+
+        int duration = Math.min(durationSeconds != null ? durationSeconds : DEFAULT_DURATION_SECONDS, MAX_DURATION_SECONDS);
+        int maxSize = Math.min(maxSizeMb != null ? maxSizeMb : DEFAULT_MAX_SIZE_MB, MAX_SIZE_MB);
+        if (duration <= 0 || maxSize <= 0) {
+            throw new BadRequestException("Durata e dimensione della registrazione devono essere positive");
+        }
+
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("Configurazione JFR 'default' non disponibile", e);
+        }
+        recording.setName("etfpac-" + System.currentTimeMillis());
+        recording.enable(SimulationPhaseEvent.class);
+        SENSITIVE_EVENTS.forEach(recording::disable);
+        recording.setToDisk(true);
+        recording.setDuration(Duration.ofSeconds(duration));
+        recording.setMaxAge(Duration.ofSeconds(duration));
+        recording.setMaxSize((long) maxSize * 1024 * 1024);
+        recording.start();
+
+        log.info("Registrazione JFR avviata: {} secondi, massimo {} MB", duration, maxSize);
+        return status();
+    }
+
+    /**
+     * Scarica quanto registrato finora; la registrazione, se attiva, prosegue
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public synchronized Resource dump(@Selector String name) {
+        if (!"dump".equals(name)) {
+            return null;
+        }
+        if (recording == null) {
+            throw new BadRequestException("Nessuna registrazione JFR disponibile");
+        }
+        try {
+            deleteLastDump();
+            lastDump = Files.createTempFile("etfpac-", ".jfr");
+            recording.dump(lastDump);
+            log.info("Dump JFR scritto in {} ({} byte)", lastDump, Files.size(lastDump));
+            return new FileSystemResource(lastDump);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossibile scrivere il dump JFR", e);
+        }
+    }
+
+    @DeleteOperation
+    public synchronized Map<String, Object> stop() {
+        closeRecording();
+        deleteLastDump();
+        return status();
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private void deleteLastDump() {
+        if (lastDump != null) {
+            try {
+                Files.deleteIfExists(lastDump);
+            } catch (IOException e) {
+                log.warn("Impossibile eliminare il dump JFR {}", lastDump, e);
+            }
+            lastDump = null;
+        }
+    }
+}
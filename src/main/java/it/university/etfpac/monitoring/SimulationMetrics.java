@@ -0,0 +1,86 @@
+package it.university.etfpac.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Metriche applicative del motore di simulazione, esposte su /actuator/prometheus.
+ *
+ * I tag hanno cardinalità limitata: l'orizzonte e il numero di percorsi sono raggruppati in fasce.
+ */
+@Component
+@RequiredArgsConstructor
+public class SimulationMetrics {
+
+    public static final String ENGINE_TIMER = "etfpac.simulation.engine";
+    public static final String MONTHS_COUNTER = "etfpac.simulation.months";
+    public static final String PATHS_COUNTER = "etfpac.simulation.paths";
+    public static final String DATA_WRITE_TIMER = "etfpac.simulation.data.write";
+    public static final String DATA_ROWS_COUNTER = "etfpac.simulation.data.rows";
+
+    private final MeterRegistry registry;
+
+    /**
+     * Misura un'esecuzione del motore e conta mesi e percorsi simulati
+     */
+    public <T> T recordEngineRun(String strategy, int months, int paths, Supplier<T> run) {
+        String strategyTag = strategy != null ? strategy : "UNKNOWN";
+
+        T result = Timer.builder(ENGINE_TIMER)
+                .description("Durata di un'esecuzione del motore di simulazione")
+                .tag("strategy", strategyTag)
+                .tag("horizon", horizonBucket(months))
+                .tag("paths", pathsBucket(paths))
+                .register(registry)
+                .record(run);
+
+        Counter.builder(MONTHS_COUNTER)
+                .description("Mesi simulati (per percorso)")
+                .tag("strategy", strategyTag)
+                .register(registry)
+                .increment((double) months * paths);
+        Counter.builder(PATHS_COUNTER)
+                .description("Percorsi simulati")
+                .tag("strategy", strategyTag)
+                .register(registry)
+                .increment(paths);
+
+        return result;
+    }
+
+    /**
+     * Misura la scrittura su database dei punti dati di una simulazione
+     */
+    public <T> T recordDataWrite(int rows, Supplier<T> write) {
+        T result = Timer.builder(DATA_WRITE_TIMER)
+                .description("Latenza di scrittura dei dati di simulazione")
+                .register(registry)
+                .record(write);
+        Counter.builder(DATA_ROWS_COUNTER)
+                .description("Righe di dati simulazione scritte")
+                .register(registry)
+                .increment(rows);
+        return result;
+    }
+
+    static String horizonBucket(int months) {
+        if (months <= 12) return "0-1y";
+        if (months <= 60) return "1-5y";
+        if (months <= 120) return "5-10y";
+        if (months <= 240) return "10-20y";
+        return "20y+";
+    }
+
+    static String pathsBucket(int paths) {
+        if (paths <= 1) return "1";
+        if (paths <= 100) return "2-100";
+        if (paths <= 1000) return "101-1000";
+        if (paths <= 10000) return "1001-10000";
+        return "10000+";
+    }
+}
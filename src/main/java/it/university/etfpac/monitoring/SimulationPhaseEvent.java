@@ -0,0 +1,74 @@
+package it.university.etfpac.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR che misura una fase di simulazione o backtest (lookup ETF, ciclo mensile,
+ * scrittura dati, mapping della risposta).
+ *
+ * Se la registrazione non è attiva il costo è quello di un controllo booleano.
+ */
+@Name("it.university.etfpac.SimulationPhase")
+@Label("Simulation Phase")
+@Category({"ETF PAC", "Simulation"})
+@Description("Durata di una fase del motore di simulazione o della persistenza")
+@StackTrace(false)
+public class SimulationPhaseEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Simulation Id")
+    long simulationId;
+
+    @Label("Months")
+    int months;
+
+    @Label("ETFs")
+    int etfCount;
+
+    @Label("Rows Written")
+    int rowsWritten;
+
+    public static SimulationPhaseEvent start(String operation, String phase) {
+        SimulationPhaseEvent event = new SimulationPhaseEvent();
+        event.operation = operation;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    public SimulationPhaseEvent simulationId(Long simulationId) {
+        this.simulationId = simulationId != null ? simulationId : 0L;
+        return this;
+    }
+
+    public SimulationPhaseEvent months(Integer months) {
+        this.months = months != null ? months : 0;
+        return this;
+    }
+
+    public SimulationPhaseEvent etfCount(int etfCount) {
+        this.etfCount = etfCount;
+        return this;
+    }
+
+    public SimulationPhaseEvent rowsWritten(int rowsWritten) {
+        this.rowsWritten = rowsWritten;
+        return this;
+    }
+
+    public void finish() {
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package it.university.etfpac.repository;
+
+import it.university.etfpac.entity.Backtest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface BacktestRepository extends JpaRepository<Backtest, Long> {
+
+    // I backtest salvati non cambiano: la data di creazione basta come versione
+    @Query("SELECT b.createdAt FROM Backtest b WHERE b.id = :id")
+    Optional<LocalDateTime> findCreatedAtById(@Param("id") Long id);
+}
@@ -4,6 +4,8 @@ import it.university.etfpac.entity.ETF;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,9 +13,11 @@ public interface ETFRepository extends JpaRepository<ETF, String> {
 
     List<ETF> findByRisk(ETF.RiskLevel risk);
 
-    @Query("SELECT e FROM ETF e ORDER BY e.oneYear DESC")
-    List<ETF> findTopPerformingETFs();
+    @Query("SELECT COUNT(e) AS count, MAX(e.updatedAt) AS lastUpdate FROM ETF e")
+    CatalogStamp findCatalogStamp();
 
-    @Query("SELECT e FROM ETF e WHERE e.expense <= :maxExpense ORDER BY e.expense ASC")
-    List<ETF> findLowCostETFs(Double maxExpense);
-}
\ No newline at end of file
+    interface CatalogStamp {
+        long getCount();
+        LocalDateTime getLastUpdate();
+    }
+}
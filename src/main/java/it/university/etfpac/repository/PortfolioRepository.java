@@ -2,28 +2,85 @@ package it.university.etfpac.repository;
 
 import it.university.etfpac.entity.Portfolio;
 import it.university.etfpac.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
 
+    /**
+     * Riga di allocazione senza caricare l'entità ETF: i dettagli arrivano dal catalogo in memoria
+     */
+    interface AllocationRow {
+        Long getPortfolioId();
+        String getEtfId();
+        BigDecimal getPercentage();
+    }
+
+    /**
+     * Aggregato dei portfolio di un utente per coppia stato/strategia
+     */
+    interface UserPortfolioAggregate {
+        Portfolio.PortfolioStatus getStatus();
+        Portfolio.InvestmentStrategy getStrategy();
+        Long getPortfolios();
+        Long getActivePortfolios();
+        BigDecimal getInitialAmount();
+    }
+
+    // Le query di elenco caricano l'utente nella stessa select; le allocazioni con findAllocationsByPortfolioIds
+    @EntityGraph(attributePaths = "user")
     List<Portfolio> findByUserAndIsTemplateOrderByCreatedAtDesc(User user, Boolean isTemplate);
 
+    @EntityGraph(attributePaths = "user")
     List<Portfolio> findByUserOrIsTemplateOrderByCreatedAtDesc(User user, Boolean isTemplate);
 
     List<Portfolio> findByUserAndIsTemplate(User user, Boolean isTemplate);
 
+    @EntityGraph(attributePaths = "user")
     Page<Portfolio> findByUserAndIsTemplate(User user, Boolean isTemplate, Pageable pageable);
 
+    // Paginazione keyset dei portfolio di un utente su (created_at, id), servita da idx_portfolios_user_created
+    @EntityGraph(attributePaths = "user")
+    @Query("""
+      SELECT p
+        FROM Portfolio p
+       WHERE p.user.id    = :userId
+         AND p.isTemplate = false
+    ORDER BY p.createdAt DESC, p.id DESC
+    """)
+    List<Portfolio> findLatestByUser(@Param("userId") Long userId, Limit limit);
+
+    @EntityGraph(attributePaths = "user")
+    @Query("""
+      SELECT p
+        FROM Portfolio p
+       WHERE p.user.id    = :userId
+         AND p.isTemplate = false
+         AND (p.createdAt, p.id) < (:createdAt, :id)
+    ORDER BY p.createdAt DESC, p.id DESC
+    """)
+    List<Portfolio> findLatestByUserBefore(@Param("userId") Long userId,
+                                          @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") Long id,
+                                          Limit limit);
+
+    @EntityGraph(attributePaths = "user")
     List<Portfolio> findByIsTemplateOrderByCreatedAtDesc(Boolean isTemplate);
 
+    @EntityGraph(attributePaths = "user")
     @Query("""
       SELECT p
         FROM Portfolio p
@@ -38,5 +95,35 @@ public interface PortfolioRepository extends JpaRepository<Portfolio, Long> {
 
 
     // Query per strategia
+    @EntityGraph(attributePaths = "user")
     List<Portfolio> findByStrategyAndIsTemplate(Portfolio.InvestmentStrategy strategy, Boolean isTemplate);
+
+    // Solo il timestamp di modifica, per le richieste condizionali
+    @Query("SELECT p.updatedAt FROM Portfolio p WHERE p.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+
+    // Allocazioni di un'intera pagina di portfolio in una sola query
+    @Query("""
+      SELECT p.id      AS portfolioId,
+             KEY(a).id AS etfId,
+             VALUE(a)  AS percentage
+        FROM Portfolio p
+        JOIN p.etfAllocations a
+       WHERE p.id IN :ids
+    """)
+    List<AllocationRow> findAllocationsByPortfolioIds(@Param("ids") Collection<Long> ids);
+
+    // Conteggi e totali dei portfolio (non template) di un utente in una sola query raggruppata
+    @Query("""
+      SELECT p.status          AS status,
+             p.strategy        AS strategy,
+             COUNT(p)          AS portfolios,
+             SUM(CASE WHEN p.active = true THEN 1 ELSE 0 END) AS activePortfolios,
+             SUM(p.initialAmount) AS initialAmount
+        FROM Portfolio p
+       WHERE p.user.id    = :userId
+         AND p.isTemplate = false
+    GROUP BY p.status, p.strategy
+    """)
+    List<UserPortfolioAggregate> aggregateByUser(@Param("userId") Long userId);
 }
\ No newline at end of file
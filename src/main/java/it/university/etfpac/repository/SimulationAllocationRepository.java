@@ -3,11 +3,18 @@ package it.university.etfpac.repository;
 import it.university.etfpac.entity.Simulation;
 import it.university.etfpac.entity.SimulationAllocation;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
 public interface SimulationAllocationRepository extends JpaRepository<SimulationAllocation, Long> {
     List<SimulationAllocation> findBySimulation(Simulation simulation);
-    void deleteBySimulation(Simulation simulation);
+
+    // Una sola DELETE invece di caricare e rimuovere ogni allocazione
+    @Modifying
+    @Query("DELETE FROM SimulationAllocation a WHERE a.simulation.id = :simulationId")
+    int deleteBySimulationId(@Param("simulationId") Long simulationId);
 }
\ No newline at end of file
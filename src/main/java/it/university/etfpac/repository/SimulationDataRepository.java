@@ -3,11 +3,21 @@ package it.university.etfpac.repository;
 import it.university.etfpac.entity.Simulation;
 import it.university.etfpac.entity.SimulationData;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface SimulationDataRepository extends JpaRepository<SimulationData, Long> {
-    List<SimulationData> findBySimulationOrderByMonth(Simulation simulation);
-    void deleteBySimulation(Simulation simulation);
+    // Le righe non sono mai precedenti alla simulazione: il limite su created_at esclude le partizioni più vecchie
+    @Query("SELECT d FROM SimulationData d WHERE d.simulation = :simulation AND d.createdAt >= :since ORDER BY d.month")
+    List<SimulationData> findBySimulationOrderByMonth(@Param("simulation") Simulation simulation, @Param("since") LocalDateTime since);
+
+    // Una sola DELETE; il limite su created_at esclude le partizioni precedenti alla simulazione
+    @Modifying
+    @Query("DELETE FROM SimulationData d WHERE d.simulation.id = :simulationId AND d.createdAt >= :since")
+    int deleteBySimulationId(@Param("simulationId") Long simulationId, @Param("since") LocalDateTime since);
 }
\ No newline at end of file
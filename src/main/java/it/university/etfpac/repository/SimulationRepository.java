@@ -2,13 +2,61 @@ package it.university.etfpac.repository;
 
 import it.university.etfpac.entity.Simulation;
 import it.university.etfpac.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface SimulationRepository extends JpaRepository<Simulation, Long> {
 
+    interface StatusCount {
+        Simulation.SimulationStatus getStatus();
+        Long getCount();
+    }
+
+    interface SimulationSummary {
+        Long getId();
+        String getName();
+        Double getSharpeRatio();
+    }
+
     Page<Simulation> findByUser(User user, Pageable pageable);
+
+    // Paginazione keyset su (created_at, id): prima pagina e pagine successive al cursore, senza count
+    @Query("SELECT s FROM Simulation s ORDER BY s.createdAt DESC, s.id DESC")
+    List<Simulation> findLatest(Limit limit);
+
+    @Query("""
+      SELECT s
+        FROM Simulation s
+       WHERE (s.createdAt, s.id) < (:createdAt, :id)
+    ORDER BY s.createdAt DESC, s.id DESC
+    """)
+    List<Simulation> findLatestBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+
+    // Solo il timestamp di modifica, per le richieste condizionali
+    @Query("SELECT s.updatedAt FROM Simulation s WHERE s.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+
+    @Query("SELECT s.status AS status, COUNT(s) AS count FROM Simulation s WHERE s.user.id = :userId GROUP BY s.status")
+    List<StatusCount> countByStatusForUser(@Param("userId") Long userId);
+
+    // Migliore simulazione dell'utente per Sharpe ratio, senza caricare l'entità
+    @Query("""
+      SELECT s.id AS id, s.name AS name, s.sharpeRatio AS sharpeRatio
+        FROM Simulation s
+       WHERE s.user.id = :userId
+         AND s.sharpeRatio IS NOT NULL
+    ORDER BY s.sharpeRatio DESC
+       LIMIT 1
+    """)
+    Optional<SimulationSummary> findBestBySharpeRatio(@Param("userId") Long userId);
 }
\ No newline at end of file
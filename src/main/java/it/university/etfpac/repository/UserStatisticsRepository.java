@@ -0,0 +1,20 @@
+package it.university.etfpac.repository;
+
+import it.university.etfpac.entity.UserStatistics;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface UserStatisticsRepository extends JpaRepository<UserStatistics, Long> {
+
+    // Serializza i ricalcoli concorrenti dello stesso utente: l'ultimo a scrivere vede tutte le modifiche
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserStatistics s WHERE s.userId = :userId")
+    Optional<UserStatistics> findForUpdate(@Param("userId") Long userId);
+}
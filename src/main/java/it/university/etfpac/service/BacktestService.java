@@ -1,17 +1,33 @@
 package it.university.etfpac.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import it.university.etfpac.dto.request.BacktestRequest;
+import it.university.etfpac.entity.Backtest;
+import it.university.etfpac.entity.Simulation;
+import it.university.etfpac.exception.ResourceNotFoundException;
+import it.university.etfpac.monitoring.SimulationPhaseEvent;
 import it.university.etfpac.repository.*;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @RequiredArgsConstructor
@@ -19,45 +35,123 @@ import java.util.stream.Collectors;
 @Transactional
 public class BacktestService {
 
-    private final ETFRepository etfRepository;
+    static final String CACHE_NAME = "backtest";
+
+    private static final TypeReference<Map<String, Object>> REPORT_TYPE = new TypeReference<>() {};
+    private static final TypeReference<List<BacktestDataPoint>> SERIES_TYPE = new TypeReference<>() {};
+
     private final UserRepository userRepository;
     private final SimulationEngine simulationEngine;
-
-    @Cacheable(value = "backtest",
-            key = "#request.strategy + '_' + #request.period + '_' + #request.etfAllocation.hashCode()")
+    private final ETFCatalog etfCatalog;
+    private final BacktestRepository backtestRepository;
+    private final ObjectMapper objectMapper;
+    private final CacheManager cacheManager;
+
+    /**
+     * Esegue e salva il backtest. In cache va solo il risultato compatto ({@link BacktestSummary}):
+     * serie storica, confronto col benchmark e metriche di rischio sono deterministici e si ricalcolano
+     */
     public Map<String, Object> runBacktest(BacktestRequest request) {
         log.info("Esecuzione backtest: {} strategia {} periodo {}",
                 request.getName(), request.getStrategy(), request.getPeriod());
 
+        SimulationPhaseEvent validation = SimulationPhaseEvent.start("runBacktest", "validation");
         validateBacktestRequest(request);
+        validation.etfCount(request.getEtfAllocation().size()).finish();
 
-        // Calcola la durata del backtest
-        long months = ChronoUnit.MONTHS.between(request.getStartDate(), request.getEndDate());
+        String cacheKey = request.cacheKey();
+        BacktestSummary cached = readCached(cacheKey);
+        if (cached != null) {
+            log.info("Backtest {} servito dalla cache", cached.getBacktestId());
+            return toResponse(request, cached, generateHistoricalData(request));
+        }
+
+        List<BacktestDataPoint> historicalData = generateHistoricalData(request);
+        BacktestSummary summary = computeBacktest(request, historicalData);
+        Map<String, Object> response = toResponse(request, summary, historicalData);
+
+        SimulationPhaseEvent persist = SimulationPhaseEvent.start("runBacktest", "persist");
+        Backtest saved = backtestRepository.save(toEntity(request, response, historicalData));
+        summary.setBacktestId(saved.getId());
+        response.put("backtest_id", saved.getId());
+        persist.rowsWritten(1).finish();
 
-        // Genera i  dati storici simulati
-        List<BacktestDataPoint> historicalData = generateHistoricalData(request, (int) months);
+        writeCached(cacheKey, summary);
+
+        log.info("Backtest completato: rendimento {}%, Sharpe {}",
+                summary.getResults().getTotalReturn(), summary.getResults().getSharpeRatio());
+
+        return response;
+    }
+
+    /**
+     * Calcola strategia, benchmark e attribuzione senza salvare: usato anche dal confronto tra strategie
+     */
+    private BacktestSummary computeBacktest(BacktestRequest request, List<BacktestDataPoint> historicalData) {
+        int months = historicalData.size() - 1;
+        int etfCount = request.getEtfAllocation().size();
 
         // Esegue il  backtest con strategia selezionata
+        SimulationPhaseEvent strategy = SimulationPhaseEvent.start("runBacktest", "strategy");
         BacktestResults results = executeBacktest(request, historicalData);
+        strategy.months(months).etfCount(etfCount).finish();
 
         // Confronta con il benchmark
+        SimulationPhaseEvent benchmark = SimulationPhaseEvent.start("runBacktest", "benchmark");
         BacktestResults benchmarkResults = executeBenchmarkBacktest(request, historicalData);
+        benchmark.months(months).finish();
 
+        return BacktestSummary.builder()
+                .results(results)
+                .benchmarkResults(benchmarkResults)
+                .performanceAttribution(calculatePerformanceAttribution(request, results))
+                .executedAt(new Date())
+                .build();
+    }
+
+    /**
+     * Risposta completa a partire dal risultato compatto; le viste derivate vengono ricalcolate
+     */
+    private Map<String, Object> toResponse(BacktestRequest request, BacktestSummary summary,
+                                           List<BacktestDataPoint> historicalData) {
+        SimulationPhaseEvent mapping = SimulationPhaseEvent.start("runBacktest", "mapping");
         Map<String, Object> response = new HashMap<>();
-        response.put("backtest_id", generateBacktestId());
+        response.put("backtest_id", summary.getBacktestId());
         response.put("request", request);
-        response.put("results", results);
-        response.put("benchmark_results", benchmarkResults);
-        response.put("comparison", compareWithBenchmark(results, benchmarkResults));
-        response.put("risk_metrics", calculateRiskMetrics(results));
-        response.put("performance_attribution", calculatePerformanceAttribution(request, results));
+        response.put("results", summary.getResults());
+        response.put("benchmark_results", summary.getBenchmarkResults());
+        response.put("comparison", compareWithBenchmark(summary.getResults(), summary.getBenchmarkResults()));
+        response.put("risk_metrics", calculateRiskMetrics(summary.getResults()));
+        response.put("performance_attribution", summary.getPerformanceAttribution());
         response.put("historical_data", historicalData);
-        response.put("executed_at", new Date());
+        response.put("executed_at", summary.getExecutedAt());
+        mapping.months(historicalData.size() - 1).etfCount(request.getEtfAllocation().size()).finish();
+        return response;
+    }
 
-        log.info("Backtest completato: rendimento {}%, Sharpe {}",
-                results.getTotalReturn(), results.getSharpeRatio());
+    private BacktestSummary readCached(String key) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.get(key, BacktestSummary.class);
+        } catch (RuntimeException e) {
+            log.warn("Lettura dalla cache backtest fallita: {}", e.getMessage());
+            return null;
+        }
+    }
 
-        return response;
+    private void writeCached(String key, BacktestSummary summary) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.put(key, summary);
+        } catch (RuntimeException e) {
+            log.warn("Scrittura nella cache backtest fallita: {}", e.getMessage());
+        }
     }
 
     public Map<String, Object> compareStrategies(Map<String, Object> comparisonRequest) {
@@ -77,8 +171,9 @@ public class BacktestService {
             request.setStrategy(strategy);
             request.setName("Comparison_" + strategy);
 
-            Map<String, Object> backtestResult = runBacktest(request);
-            strategyResults.put(strategy.toLowerCase(), (BacktestResults) backtestResult.get("results"));
+            validateBacktestRequest(request);
+            BacktestSummary summary = computeBacktest(request, generateHistoricalData(request));
+            strategyResults.put(strategy.toLowerCase(), summary.getResults());
         }
 
         Map<String, Object> comparison = new HashMap<>();
@@ -92,20 +187,101 @@ public class BacktestService {
         return comparison;
     }
 
+    /**
+     * Versione del backtest salvato per ETag e Last-Modified, senza leggere report e serie
+     */
+    @Transactional(readOnly = true)
+    public ResourceVersion getBacktestVersion(Long backtestId) {
+        return backtestRepository.findCreatedAtById(backtestId)
+                .map(createdAt -> ResourceVersion.of("b", backtestId, createdAt))
+                .orElseThrow(() -> new ResourceNotFoundException("Backtest non trovato con ID: " + backtestId));
+    }
+
+    /**
+     * Risultati di un backtest salvato, senza ricalcolo: il report viene dal JSON salvato e la serie
+     * mensile dalla colonna compressa
+     */
+    @Transactional(readOnly = true)
     public Map<String, Object> getBacktestResults(Long backtestId) {
         log.info("Recupero risultati backtest ID: {}", backtestId);
 
-        // Simula il recupero da database/cache
-        Map<String, Object> results = new HashMap<>();
-        results.put("backtest_id", backtestId);
-        results.put("status", "COMPLETED");
-        results.put("created_at", new Date());
+        Backtest backtest = backtestRepository.findById(backtestId)
+                .orElseThrow(() -> new ResourceNotFoundException("Backtest non trovato con ID: " + backtestId));
 
-        results.put("message", "Risultati backtest recuperati con successo");
+        Map<String, Object> results = readReport(backtest.getReport());
+        results.put("backtest_id", backtest.getId());
+        results.put("historical_data", decompressSeries(backtest.getSeries()));
+        results.put("executed_at", Date.from(backtest.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant()));
+        results.put("status", "COMPLETED");
 
         return results;
     }
 
+    private Backtest toEntity(BacktestRequest request, Map<String, Object> response, List<BacktestDataPoint> historicalData) {
+        BacktestResults results = (BacktestResults) response.get("results");
+
+        Map<String, Object> report = new LinkedHashMap<>(response);
+        report.remove("historical_data");
+        report.remove("executed_at");
+
+        Backtest backtest = new Backtest();
+        // Il riferimento all'utente è facoltativo: il backtest resta consultabile anche senza utente valido
+        backtest.setUserId(request.getUserId() != null && userRepository.existsById(request.getUserId())
+                ? request.getUserId() : null);
+        backtest.setName(request.getName() != null ? request.getName() : "Backtest " + request.getStrategy());
+        backtest.setStrategy(Simulation.Strategy.valueOf(request.getStrategy().toUpperCase()));
+        backtest.setPeriod(request.getPeriod());
+        backtest.setStartDate(request.getStartDate());
+        backtest.setEndDate(request.getEndDate());
+        backtest.setInitialAmount(request.getInitialAmount());
+        backtest.setMonthlyAmount(request.getMonthlyAmount());
+        backtest.setTotalReturn(results.getTotalReturn());
+        backtest.setAnnualizedReturn(results.getAnnualizedReturn());
+        backtest.setVolatility(results.getVolatility());
+        backtest.setSharpeRatio(results.getSharpeRatio());
+        backtest.setMaxDrawdown(results.getMaxDrawdown());
+        backtest.setFinalValue(results.getFinalValue());
+        backtest.setTotalInvested(results.getTotalInvested());
+        backtest.setReport(writeReport(report));
+        backtest.setSeries(compressSeries(historicalData));
+        backtest.setSeriesPoints(historicalData.size());
+        return backtest;
+    }
+
+    private String writeReport(Map<String, Object> report) {
+        try {
+            return objectMapper.writeValueAsString(report);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Serializzazione report backtest fallita", e);
+        }
+    }
+
+    private Map<String, Object> readReport(String report) {
+        try {
+            return objectMapper.readValue(report, REPORT_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura report backtest fallita", e);
+        }
+    }
+
+    private byte[] compressSeries(List<BacktestDataPoint> historicalData) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, historicalData);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Compressione serie backtest fallita", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<BacktestDataPoint> decompressSeries(byte[] series) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(series))) {
+            return objectMapper.readValue(gzip, SERIES_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura serie backtest fallita", e);
+        }
+    }
+
     private void validateBacktestRequest(BacktestRequest request) {
         // Controllo null safety
         if (request == null) {
@@ -152,10 +328,10 @@ public class BacktestService {
             throw new IllegalArgumentException("La somma delle allocazioni deve essere 100% (attuale: " + totalAllocation + "%)");
         }
 
-        // Validazione ETF esistenti - solo se repository è disponibile
+        // Validazione ETF esistenti - solo se il catalogo è disponibile
         try {
             for (String etfId : request.getEtfAllocation().keySet()) {
-                if (!etfRepository.existsById(etfId)) {
+                if (!etfCatalog.contains(etfId)) {
                     log.warn("ETF non trovato nel database: {}, continuo comunque", etfId);
                 }
             }
@@ -164,8 +340,14 @@ public class BacktestService {
         }
     }
 
-    private List<BacktestDataPoint> generateHistoricalData(BacktestRequest request, int months) {
-        List<BacktestDataPoint> data = new ArrayList<>();
+    /**
+     * Serie storica simulata: generatori a seed fisso, quindi ricalcolarla dà sempre lo stesso risultato
+     */
+    private List<BacktestDataPoint> generateHistoricalData(BacktestRequest request) {
+        SimulationPhaseEvent history = SimulationPhaseEvent.start("runBacktest", "history");
+        // Calcola la durata del backtest
+        int months = (int) ChronoUnit.MONTHS.between(request.getStartDate(), request.getEndDate());
+        List<BacktestDataPoint> data = new ArrayList<>(months + 1);
 
         // Simula dati storici realistici
         Random random = new Random(42); // Seed fisso per risultati riproducibili
@@ -203,6 +385,7 @@ public class BacktestService {
             data.add(dataPoint);
         }
 
+        history.months(months).etfCount(request.getEtfAllocation().size()).finish();
         return data;
     }
 
@@ -317,8 +500,8 @@ public class BacktestService {
         return metrics;
     }
 
-    private Map<String, Object> calculatePerformanceAttribution(BacktestRequest request, BacktestResults results) {
-        Map<String, Object> attribution = new HashMap<>();
+    private Map<String, Double> calculatePerformanceAttribution(BacktestRequest request, BacktestResults results) {
+        Map<String, Double> attribution = new HashMap<>();
 
         // Simula il contributo di ogni ETF alla performance
         for (Map.Entry<String, Double> entry : request.getEtfAllocation().entrySet()) {
@@ -467,10 +650,6 @@ public class BacktestService {
         return chart;
     }
 
-    private Long generateBacktestId() {
-        return System.currentTimeMillis();
-    }
-
     // Metodi helper per parsing sicuro
     private Double parseDouble(Object value) {
         if (value == null) return 0.0;
@@ -512,6 +691,8 @@ public class BacktestService {
     // Classi helper
     @lombok.Data
     @lombok.Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class BacktestDataPoint {
         private Integer month;
         private LocalDate date;
@@ -521,8 +702,25 @@ public class BacktestService {
         private Double cumulativeReturn;
     }
 
+    /**
+     * Risultato compatto del backtest, l'unica parte salvata nella cache
+     */
+    @lombok.Data
+    @lombok.Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BacktestSummary {
+        private Long backtestId;
+        private BacktestResults results;
+        private BacktestResults benchmarkResults;
+        private Map<String, Double> performanceAttribution;
+        private Date executedAt;
+    }
+
     @lombok.Data
     @lombok.Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
     public static class BacktestResults {
         private Double totalReturn;
         private Double annualizedReturn;
@@ -0,0 +1,187 @@
+package it.university.etfpac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.UUID;
+
+/**
+ * Traduce le {@link DomainChangeEvent} in invalidazioni mirate delle cache.
+ *
+ * Le cache Redis sono condivise: le voci vengono eliminate una sola volta, dal nodo che ha eseguito
+ * la modifica, dopo il commit della transazione (così una lettura concorrente non rimette in cache
+ * il dato vecchio). Lo stato locale a ogni nodo, oggi il catalogo ETF in memoria, viene aggiornato
+ * tramite un messaggio pub/sub su {@link #CHANNEL}: gli altri nodi ricaricano il catalogo subito
+ * invece di aspettare il controllo periodico.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CacheInvalidator {
+
+    static final String CHANNEL = "etfpac:cache-invalidation";
+
+    private final CacheManager cacheManager;
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ETFCatalog etfCatalog;
+    private final MeterRegistry registry;
+
+    @Value("${cache.invalidation.broadcast.enabled:true}")
+    private boolean broadcast;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    // Vero mentre si applica un messaggio di un altro nodo: le modifiche che ne derivano non vanno ripropagate
+    private final ThreadLocal<Boolean> applyingRemote = ThreadLocal.withInitial(() -> false);
+    private RedisMessageListenerContainer container;
+
+    /**
+     * Messaggio scambiato tra i nodi; {@code origin} evita che il nodo mittente lo riapplichi
+     */
+    record InvalidationMessage(String origin, DomainChangeEvent event) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        if (!broadcast) {
+            return;
+        }
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        container.afterPropertiesSet();
+        container.start();
+        log.info("Nodo {} in ascolto delle invalidazioni su {}", nodeId, CHANNEL);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+
+    /**
+     * Eseguito dopo il commit; senza transazione attiva (ad esempio dai job asincroni) subito
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDomainChange(DomainChangeEvent event) {
+        evictShared(event);
+        invalidations(event, "local").increment();
+        if (hasNodeLocalState(event)) {
+            publish(event);
+        }
+    }
+
+    /**
+     * Il catalogo di questo nodo è cambiato: vale come modifica degli ETF, salvo quando il
+     * ricaricamento è stato causato da un altro nodo, che ha già invalidato le cache condivise
+     */
+    @EventListener
+    public void onCatalogChanged(ETFCatalogChangedEvent event) {
+        if (!applyingRemote.get()) {
+            onDomainChange(DomainChangeEvent.updated(DomainChangeEvent.Entity.ETF, event.version()));
+        }
+    }
+
+    private void evictShared(DomainChangeEvent event) {
+        switch (event.entity()) {
+            case SIMULATION -> evict("simulations", event.id());
+            case PORTFOLIO -> evict("portfolios", event.id());
+            case TEMPLATE -> {
+                evict("portfolios", event.id());
+                clear("templates");
+            }
+            // Metriche di rischio di portfolio e template dipendono dal catalogo
+            case ETF -> {
+                clear("portfolios");
+                clear("templates");
+            }
+        }
+    }
+
+    private static boolean hasNodeLocalState(DomainChangeEvent event) {
+        return event.entity() == DomainChangeEvent.Entity.ETF;
+    }
+
+    private void applyNodeLocal(DomainChangeEvent event) {
+        if (event.entity() == DomainChangeEvent.Entity.ETF && !event.id().equals(Long.toString(etfCatalog.version()))) {
+            etfCatalog.refresh();
+        }
+    }
+
+    private void publish(DomainChangeEvent event) {
+        if (!broadcast) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(new InvalidationMessage(nodeId, event)));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Propagazione dell'invalidazione {} fallita: {}", event, e.getMessage());
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            InvalidationMessage received = objectMapper.readValue(message.getBody(), InvalidationMessage.class);
+            if (nodeId.equals(received.origin())) {
+                return;
+            }
+            applyingRemote.set(true);
+            applyNodeLocal(received.event());
+            invalidations(received.event(), "remote").increment();
+        } catch (Exception e) {
+            log.warn("Messaggio di invalidazione non applicato: {}", e.getMessage());
+        } finally {
+            applyingRemote.remove();
+        }
+    }
+
+    private void evict(String cacheName, String key) {
+        try {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null) {
+                cache.evict(key);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Invalidazione di {} nella cache {} fallita: {}", key, cacheName, e.getMessage());
+        }
+    }
+
+    private void clear(String cacheName) {
+        try {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null) {
+                cache.clear();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Svuotamento della cache {} fallito: {}", cacheName, e.getMessage());
+        }
+    }
+
+    private Counter invalidations(DomainChangeEvent event, String origin) {
+        return Counter.builder("etfpac.cache.invalidations")
+                .description("Invalidazioni di cache per tipo di entità e origine (questo nodo o un altro)")
+                .tag("entity", event.entity().name().toLowerCase())
+                .tag("origin", origin)
+                .register(registry);
+    }
+}
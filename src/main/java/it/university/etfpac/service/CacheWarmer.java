@@ -0,0 +1,215 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.request.SimulationRequest;
+import it.university.etfpac.entity.User;
+import it.university.etfpac.exception.BadRequestException;
+import it.university.etfpac.exception.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Riscaldamento delle cache all'avvio e a ogni modifica del catalogo ETF.
+ *
+ * Carica il catalogo in memoria e la matrice di covarianza, i template di portfolio per ogni profilo
+ * di rischio e le simulazioni dirette più richieste secondo {@link ScenarioTrafficRecorder}. Come
+ * health indicator ({@code cacheWarmup}) resta OUT_OF_SERVICE finché il primo riscaldamento non è
+ * terminato, così il gruppo readiness non manda traffico a un nodo con le cache fredde.
+ *
+ * Template e scenari stanno nelle cache Redis condivise: dopo una modifica del catalogo li ricalcola
+ * un solo nodo, quello che ottiene il lock su Redis per la nuova versione; gli altri aggiornano solo
+ * il modello di rischio locale.
+ */
+@Component("cacheWarmup")
+@RequiredArgsConstructor
+@Slf4j
+public class CacheWarmer implements HealthIndicator {
+
+    private final ETFCatalog etfCatalog;
+    private final PortfolioRiskEngine riskEngine;
+    private final PortfolioService portfolioService;
+    private final SimulationService simulationService;
+    private final ScenarioTrafficRecorder trafficRecorder;
+    private final CacheManager cacheManager;
+    private final StringRedisTemplate redisTemplate;
+
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
+
+    @Value("${cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cache.warmup.scenarios.top-k:20}")
+    private int topScenarios;
+
+    @Value("${cache.warmup.lock-ttl:PT10M}")
+    private Duration lockTtl;
+
+    private final AtomicReference<WarmupReport> lastReport = new AtomicReference<>();
+
+    /**
+     * Esito dell'ultimo riscaldamento
+     */
+    public record WarmupReport(String trigger, long catalogVersion, int templates, int scenarios,
+                               int failures, long durationMs, LocalDateTime completedAt) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (!enabled) {
+            log.info("Riscaldamento delle cache disabilitato");
+            return;
+        }
+        CompletableFuture.runAsync(() -> warm("startup", false), computeExecutor);
+    }
+
+    /**
+     * Dopo una modifica al catalogo i valori in cache sono calcolati sul catalogo precedente:
+     * template e scenari vengono ricalcolati e sovrascritti
+     */
+    @EventListener
+    public void onCatalogChanged(ETFCatalogChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            if (claimWarmup(event.version())) {
+                warm("catalog-change", true);
+            } else {
+                warmLocal();
+            }
+        }, computeExecutor);
+    }
+
+    /**
+     * Il lock non viene rilasciato: i nodi che ricevono la stessa versione più tardi non devono ripetere
+     * il lavoro. Con Redis non raggiungibile ogni nodo riscalda da sé, come prima del lock
+     */
+    private boolean claimWarmup(long catalogVersion) {
+        String key = "etfpac:cache-warmup:" + Long.toHexString(catalogVersion);
+        try {
+            boolean claimed = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, "1", lockTtl));
+            if (!claimed) {
+                log.info("Riscaldamento per il catalogo {} già in carico a un altro nodo", Long.toHexString(catalogVersion));
+            }
+            return claimed;
+        } catch (RuntimeException e) {
+            log.warn("Lock del riscaldamento non disponibile, riscaldamento locale: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Solo lo stato in memoria di questo nodo: catalogo e matrice di covarianza
+     */
+    private void warmLocal() {
+        try {
+            etfCatalog.snapshot();
+            riskEngine.model();
+        } catch (RuntimeException e) {
+            log.warn("Riscaldamento del catalogo ETF fallito: {}", e.getMessage());
+        }
+    }
+
+    public synchronized WarmupReport warm(String trigger, boolean refresh) {
+        long start = System.nanoTime();
+        int failures = 0;
+        log.info("Riscaldamento delle cache ({}) avviato", trigger);
+
+        long catalogVersion = 0;
+        try {
+            catalogVersion = etfCatalog.snapshot().getVersion();
+            riskEngine.model();
+        } catch (RuntimeException e) {
+            failures++;
+            log.warn("Riscaldamento del catalogo ETF fallito: {}", e.getMessage());
+        }
+
+        int templates = 0;
+        try {
+            if (refresh) {
+                Cache cache = cacheManager.getCache("templates");
+                if (cache != null) {
+                    cache.clear();
+                }
+            }
+            templates = portfolioService.getPortfolioTemplates(null).size();
+            for (User.RiskProfile profile : User.RiskProfile.values()) {
+                portfolioService.getPortfolioTemplates(profile.name());
+            }
+        } catch (RuntimeException e) {
+            failures++;
+            log.warn("Riscaldamento dei template di portfolio fallito: {}", e.getMessage());
+        }
+
+        int scenarios = 0;
+        try {
+            for (Map.Entry<String, SimulationRequest> scenario : trafficRecorder.topScenarios(topScenarios).entrySet()) {
+                try {
+                    if (refresh) {
+                        simulationService.refreshSimulationDirect(scenario.getValue());
+                    } else {
+                        simulationService.runSimulationDirect(scenario.getValue());
+                    }
+                    scenarios++;
+                } catch (BadRequestException | ResourceNotFoundException e) {
+                    // Scenario non più valido, ad esempio per un ETF rimosso dal catalogo
+                    trafficRecorder.forget(scenario.getKey());
+                } catch (RuntimeException e) {
+                    failures++;
+                    log.warn("Riscaldamento dello scenario {} fallito: {}", scenario.getKey(), e.getMessage());
+                }
+            }
+            trafficRecorder.trim();
+        } catch (RuntimeException e) {
+            failures++;
+            log.warn("Lettura degli scenari più richiesti fallita: {}", e.getMessage());
+        }
+
+        WarmupReport report = new WarmupReport(trigger, catalogVersion, templates, scenarios, failures,
+                (System.nanoTime() - start) / 1_000_000, LocalDateTime.now());
+        lastReport.set(report);
+        log.info("Riscaldamento delle cache ({}) completato in {} ms: {} template, {} scenari, {} errori",
+                trigger, report.durationMs(), templates, scenarios, failures);
+        return report;
+    }
+
+    /**
+     * Un riscaldamento con errori rende comunque il nodo pronto: le cache si popolano con il traffico
+     */
+    @Override
+    public Health health() {
+        if (!enabled) {
+            return Health.up().withDetail("enabled", false).build();
+        }
+        WarmupReport report = lastReport.get();
+        if (report == null) {
+            return Health.outOfService().withDetail("reason", "Riscaldamento delle cache in corso").build();
+        }
+        return Health.up()
+                .withDetail("trigger", report.trigger())
+                .withDetail("catalogVersion", report.catalogVersion())
+                .withDetail("templates", report.templates())
+                .withDetail("scenarios", report.scenarios())
+                .withDetail("failures", report.failures())
+                .withDetail("durationMs", report.durationMs())
+                .withDetail("completedAt", report.completedAt().toString())
+                .build();
+    }
+}
@@ -0,0 +1,136 @@
+package it.university.etfpac.service;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * Modello dei rendimenti mensili correlati per un universo di ETF.
+ *
+ * Il vettore dei rendimenti del mese è μ + L·z, con z normale standard e L fattore di Cholesky della
+ * covarianza mensile (Σ/12) di {@link CovarianceModel}. Il fattore si calcola una volta per universo
+ * e il modello è condiviso tra thread in sola lettura. Gli shock vengono estratti a blocchi di
+ * {@link #BLOCK_MONTHS} mesi e trasformati in un secondo passaggio sul blocco, così il prodotto
+ * triangolare lavora su dati contigui.
+ */
+public final class CorrelatedReturnModel {
+
+    static final int BLOCK_MONTHS = 64;
+
+    private final List<String> ids;
+    private final Map<String, Integer> indexOf;
+    private final double[] drift;
+    // Triangolare inferiore, riga per riga: la riga i occupa gli elementi [i(i+1)/2, i(i+1)/2 + i]
+    private final double[] cholesky;
+
+    CorrelatedReturnModel(CovarianceModel model, List<String> ids) {
+        int n = ids.size();
+        this.ids = List.copyOf(ids);
+        this.indexOf = new HashMap<>(Math.max(16, n * 2));
+        this.drift = new double[n];
+
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) {
+            Integer position = model.indexOf(ids.get(i));
+            if (position == null) {
+                throw new IllegalArgumentException("ETF non trovato: " + ids.get(i));
+            }
+            index[i] = position;
+            indexOf.put(ids.get(i), i);
+            drift[i] = model.expectedReturn(position) / 12;
+        }
+
+        RealMatrix monthlyCovariance = new Array2DRowRealMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                monthlyCovariance.setEntry(i, j, model.covariance(index[i], index[j]) / 12);
+            }
+        }
+        RealMatrix lower = new CholeskyDecomposition(monthlyCovariance).getL();
+
+        this.cholesky = new double[n * (n + 1) / 2];
+        for (int i = 0; i < n; i++) {
+            int row = i * (i + 1) / 2;
+            for (int k = 0; k <= i; k++) {
+                cholesky[row + k] = lower.getEntry(i, k);
+            }
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    public List<String> ids() {
+        return ids;
+    }
+
+    /**
+     * Pesi (frazioni) allineati all'ordine del modello a partire da percentuali per ID ETF
+     */
+    public double[] weights(Map<String, Double> allocationPercentages) {
+        double[] weights = new double[ids.size()];
+        allocationPercentages.forEach((etfId, percentage) -> {
+            Integer index = indexOf.get(etfId);
+            if (index == null) {
+                throw new IllegalArgumentException("ETF non presente nel modello: " + etfId);
+            }
+            weights[index] += percentage != null ? percentage / 100 : 0;
+        });
+        return weights;
+    }
+
+    /**
+     * Scrive in {@code out} i rendimenti di {@code months} mesi consecutivi, a partire da
+     * {@code offset}, con layout [mese][ETF]
+     */
+    public void generate(RandomGenerator random, int months, double[] out, int offset) {
+        int n = ids.size();
+        double[] shocks = new double[Math.min(months, BLOCK_MONTHS) * n];
+
+        for (int start = 0; start < months; start += BLOCK_MONTHS) {
+            int block = Math.min(BLOCK_MONTHS, months - start);
+            for (int k = 0; k < block * n; k++) {
+                shocks[k] = random.nextGaussian();
+            }
+
+            for (int m = 0; m < block; m++) {
+                int z = m * n;
+                int target = offset + (start + m) * n;
+                for (int i = 0; i < n; i++) {
+                    int row = i * (i + 1) / 2;
+                    double value = drift[i];
+                    for (int k = 0; k <= i; k++) {
+                        value += cholesky[row + k] * shocks[z + k];
+                    }
+                    out[target + i] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rendimenti di portafoglio per {@code months} mesi: out[m] = wᵀ·r(m)
+     */
+    public void generatePortfolio(RandomGenerator random, double[] weights, int months, double[] out, int offset) {
+        int n = ids.size();
+        double[] assetReturns = new double[Math.min(months, BLOCK_MONTHS) * n];
+
+        for (int start = 0; start < months; start += BLOCK_MONTHS) {
+            int block = Math.min(BLOCK_MONTHS, months - start);
+            generate(random, block, assetReturns, 0);
+            for (int m = 0; m < block; m++) {
+                double total = 0;
+                for (int i = 0; i < n; i++) {
+                    total += assetReturns[m * n + i] * weights[i];
+                }
+                out[offset + start + m] = total;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.entity.ETF;
+
+import java.util.*;
+
+/**
+ * Matrice di covarianza annualizzata degli ETF del catalogo.
+ *
+ * Non avendo serie storiche dei prezzi, la covarianza è stimata con un modello a indice singolo
+ * sui dati storici del catalogo: Σij = βi·βj·σm² fuori diagonale e σi² sulla diagonale, dove σi
+ * deriva dalla classe di rischio dell'ETF. La matrice risultante è sempre semidefinita positiva.
+ */
+public final class CovarianceModel {
+
+    static final double MARKET_VOLATILITY = 0.16;
+    static final double DEFAULT_EXPECTED_RETURN = 0.08;
+    private static final double MIN_IDIOSYNCRATIC_SHARE = 0.04;
+    private static final int MAX_RETURN_MODELS = 256;
+
+    private final long catalogVersion;
+    private final String[] ids;
+    private final Map<String, Integer> indexOf;
+    private final double[] covariance;
+    private final double[] volatility;
+    private final double[] beta;
+    private final double[] expectedReturn;
+
+    // Fattori di Cholesky per universo: vivono quanto la matrice, quindi si invalidano col catalogo
+    private final Map<List<String>, CorrelatedReturnModel> returnModels = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, CorrelatedReturnModel> eldest) {
+            return size() > MAX_RETURN_MODELS;
+        }
+    };
+
+    CovarianceModel(ETFCatalogSnapshot snapshot) {
+        List<ETF> etfs = snapshot.all();
+        int n = etfs.size();
+
+        this.catalogVersion = snapshot.getVersion();
+        this.ids = new String[n];
+        this.indexOf = new HashMap<>(Math.max(16, n * 2));
+        this.volatility = new double[n];
+        this.beta = new double[n];
+        this.expectedReturn = new double[n];
+        this.covariance = new double[n * n];
+
+        double marketVariance = MARKET_VOLATILITY * MARKET_VOLATILITY;
+        double[] idiosyncratic = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            ETF etf = etfs.get(i);
+            ids[i] = etf.getId();
+            indexOf.put(etf.getId(), i);
+            beta[i] = etf.getBeta() != null ? etf.getBeta() : 1.0;
+            expectedReturn[i] = etf.getFiveYear() != null ? etf.getFiveYear() / 100.0 : DEFAULT_EXPECTED_RETURN;
+
+            double totalVariance = Math.pow(riskLevelVolatility(etf.getRisk()), 2);
+            double systematic = beta[i] * beta[i] * marketVariance;
+            idiosyncratic[i] = Math.max(totalVariance - systematic, totalVariance * MIN_IDIOSYNCRATIC_SHARE);
+        }
+
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            for (int j = 0; j < n; j++) {
+                covariance[row + j] = beta[i] * beta[j] * marketVariance;
+            }
+            covariance[row + i] += idiosyncratic[i];
+            volatility[i] = Math.sqrt(covariance[row + i]);
+        }
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public Integer indexOf(String etfId) {
+        return indexOf.get(etfId);
+    }
+
+    public String idAt(int index) {
+        return ids[index];
+    }
+
+    public double covariance(int i, int j) {
+        return covariance[i * ids.length + j];
+    }
+
+    public double volatility(int index) {
+        return volatility[index];
+    }
+
+    public double expectedReturn(int index) {
+        return expectedReturn[index];
+    }
+
+    public double beta(int index) {
+        return beta[index];
+    }
+
+    /**
+     * Modello dei rendimenti correlati per l'universo indicato (ordinato per ID), calcolato alla
+     * prima richiesta e poi riusato
+     */
+    public CorrelatedReturnModel returnModel(Collection<String> etfIds) {
+        List<String> universe = List.copyOf(new TreeSet<>(etfIds));
+        synchronized (returnModels) {
+            CorrelatedReturnModel cached = returnModels.get(universe);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CorrelatedReturnModel built = new CorrelatedReturnModel(this, universe);
+        synchronized (returnModels) {
+            CorrelatedReturnModel cached = returnModels.putIfAbsent(universe, built);
+            return cached != null ? cached : built;
+        }
+    }
+
+    /**
+     * Calcola in un solo passaggio varianza (wᵀΣw), beta, rendimento atteso e rapporto di
+     * diversificazione. Le allocazioni sono percentuali (0-100); gli ETF sconosciuti sono ignorati.
+     */
+    public PortfolioRiskMetrics evaluate(Map<String, ? extends Number> allocationPercentages) {
+        int n = ids.length;
+        int[] index = new int[allocationPercentages.size()];
+        double[] weight = new double[allocationPercentages.size()];
+        int m = 0;
+
+        for (Map.Entry<String, ? extends Number> entry : allocationPercentages.entrySet()) {
+            Integer i = indexOf.get(entry.getKey());
+            if (i == null || entry.getValue() == null) {
+                continue;
+            }
+            index[m] = i;
+            weight[m] = entry.getValue().doubleValue() / 100.0;
+            m++;
+        }
+
+        double variance = 0;
+        double portfolioBeta = 0;
+        double portfolioReturn = 0;
+        double weightedVolatility = 0;
+
+        for (int a = 0; a < m; a++) {
+            int row = index[a] * n;
+            double sigmaW = 0;
+            for (int b = 0; b < m; b++) {
+                sigmaW += covariance[row + index[b]] * weight[b];
+            }
+            variance += weight[a] * sigmaW;
+            portfolioBeta += weight[a] * beta[index[a]];
+            portfolioReturn += weight[a] * expectedReturn[index[a]];
+            weightedVolatility += weight[a] * volatility[index[a]];
+        }
+
+        double portfolioVolatility = Math.sqrt(Math.max(variance, 0));
+
+        return PortfolioRiskMetrics.builder()
+                .variance(variance)
+                .volatility(portfolioVolatility)
+                .beta(portfolioBeta)
+                .expectedReturn(portfolioReturn)
+                .diversificationRatio(portfolioVolatility > 0 ? weightedVolatility / portfolioVolatility : 1.0)
+                .build();
+    }
+
+    static double riskLevelVolatility(ETF.RiskLevel risk) {
+        if (risk == null) {
+            return 0.15;
+        }
+        return switch (risk) {
+            case LOW -> 0.08;
+            case MEDIUM -> 0.15;
+            case HIGH -> 0.20;
+            case VERY_HIGH -> 0.25;
+        };
+    }
+}
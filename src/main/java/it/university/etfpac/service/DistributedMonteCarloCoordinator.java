@@ -0,0 +1,217 @@
+package it.university.etfpac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Coordinatore dei job Monte Carlo distribuiti.
+ *
+ * Pubblica gli shard sullo stream {@value #SHARD_STREAM}, letto dal consumer group dei worker di
+ * tutti i nodi ({@link MonteCarloShardWorker}), e raccoglie i risultati parziali dallo stream
+ * dedicato al job. Il worker segnala la presa in carico dello shard: il timeout decorre da quel
+ * momento, non dalla pubblicazione, così uno shard in coda dietro altri job non viene ripubblicato
+ * inutilmente. Uno shard preso in carico e senza risposta entro il timeout viene ripubblicato;
+ * esauriti i tentativi, o se resta in coda oltre {@code queue-timeout-ms}, viene calcolato
+ * localmente sull'executor di calcolo, così il job termina anche se tutti gli altri nodi sono
+ * irraggiungibili.
+ */
+@Component
+@ConditionalOnProperty(name = "montecarlo.distributed.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class DistributedMonteCarloCoordinator {
+
+    static final String SHARD_STREAM = "etfpac:mc:shards";
+    static final String WORKER_GROUP = "mc-workers";
+    static final String RESULT_STREAM_PREFIX = "etfpac:mc:results:";
+    static final String JOB_KEY_PREFIX = "etfpac:mc:job:";
+    // Gli shard vengono eliminati dal coordinatore a fine job; restano solo quelli di un coordinatore caduto
+    private static final Duration ORPHAN_SHARD_RETENTION = Duration.ofHours(1);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
+
+    @Value("${montecarlo.distributed.shard-timeout-ms:30000}")
+    private long shardTimeoutMs;
+
+    @Value("${montecarlo.distributed.queue-timeout-ms:60000}")
+    private long queueTimeoutMs;
+
+    @Value("${montecarlo.distributed.max-attempts:3}")
+    private int maxAttempts;
+
+    public List<PathStatistics> execute(List<ShardTask> tasks, Function<ShardTask, PathStatistics> localFallback) {
+        String jobId = UUID.randomUUID().toString();
+        String resultKey = RESULT_STREAM_PREFIX + jobId;
+        String jobKey = JOB_KEY_PREFIX + jobId;
+        int shards = tasks.size();
+        StreamOperations<String, String, String> streams = redisTemplate.opsForStream();
+
+        // Finché la chiave esiste i worker considerano il job attivo: rinnovata a ogni giro, scade se il nodo cade
+        Duration jobTtl = Duration.ofMillis(shardTimeoutMs * 2);
+        redisTemplate.opsForValue().set(jobKey, "RUNNING", jobTtl);
+        long jobKeyRefreshedAt = System.currentTimeMillis();
+        trimOrphanShards();
+
+        PathStatistics[] results = new PathStatistics[shards];
+        int[] attempts = new int[shards];
+        // Scadenza dello shard: dalla presa in carico se claimed, altrimenti dalla pubblicazione
+        long[] deadlines = new long[shards];
+        boolean[] claimed = new boolean[shards];
+        List<CompletableFuture<PathStatistics>> fallbacks = new ArrayList<>(Collections.nCopies(shards, null));
+        List<RecordId> published = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (ShardTask task : tasks) {
+            published.add(publish(jobId, task, ++attempts[task.shard()]));
+            deadlines[task.shard()] = start + queueTimeoutMs;
+        }
+
+        int remaining = shards;
+        String lastId = "0-0";
+        try {
+            while (remaining > 0) {
+                for (MapRecord<String, String, String> record : read(streams, resultKey, lastId)) {
+                    lastId = record.getId().getValue();
+                    Map<String, String> body = record.getValue();
+                    int shard = Integer.parseInt(body.get("shard"));
+                    if (results[shard] != null) {
+                        continue; // risposta duplicata di un tentativo ripubblicato
+                    }
+                    if (body.containsKey("payload")) {
+                        // Vale anche il risultato di un tentativo precedente
+                        results[shard] = PathStatistics.fromBytes(Base64.getDecoder().decode(body.get("payload")));
+                        remaining--;
+                        continue;
+                    }
+                    if (Integer.parseInt(body.get("attempt")) != attempts[shard]) {
+                        continue; // presa in carico o errore di un tentativo già superato
+                    }
+                    if (body.containsKey("error")) {
+                        log.warn("Shard {} del job {} fallito su {}: {}", shard, jobId, body.get("worker"), body.get("error"));
+                        claimed[shard] = true;
+                        deadlines[shard] = 0; // ritenta subito
+                    } else if (body.containsKey("claimed")) {
+                        claimed[shard] = true;
+                        deadlines[shard] = System.currentTimeMillis() + shardTimeoutMs;
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                for (int shard = 0; shard < shards; shard++) {
+                    CompletableFuture<PathStatistics> fallback = fallbacks.get(shard);
+                    if (results[shard] != null) {
+                        continue;
+                    }
+                    if (fallback != null) {
+                        if (fallback.isDone()) {
+                            results[shard] = join(fallback);
+                            remaining--;
+                        }
+                        continue;
+                    }
+                    if (deadlines[shard] > now) {
+                        continue;
+                    }
+                    if (claimed[shard] && attempts[shard] < maxAttempts) {
+                        log.warn("Shard {} del job {} scaduto, nuovo tentativo {}", shard, jobId, attempts[shard] + 1);
+                        published.add(publish(jobId, tasks.get(shard), ++attempts[shard]));
+                        claimed[shard] = false;
+                        deadlines[shard] = now + queueTimeoutMs;
+                    } else {
+                        // Tentativi esauriti, oppure la coda è così lunga che ripubblicare aggiungerebbe solo un duplicato
+                        log.warn("Shard {} del job {} calcolato localmente dopo {} tentativi ({})", shard, jobId,
+                                attempts[shard], claimed[shard] ? "scaduto" : "mai preso in carico");
+                        ShardTask task = tasks.get(shard);
+                        fallbacks.set(shard, CompletableFuture.supplyAsync(() -> localFallback.apply(task), computeExecutor));
+                    }
+                }
+
+                if (remaining > 0 && now - jobKeyRefreshedAt >= jobTtl.toMillis() / 4) {
+                    redisTemplate.expire(jobKey, jobTtl);
+                    jobKeyRefreshedAt = now;
+                }
+            }
+        } finally {
+            redisTemplate.delete(List.of(resultKey, jobKey));
+            // Solo gli shard di questo job: un taglio per lunghezza dello stream toccherebbe anche quelli degli altri
+            streams.delete(SHARD_STREAM, published.toArray(RecordId[]::new));
+        }
+
+        log.info("Job Monte Carlo {} completato: {} shard", jobId, shards);
+        return Arrays.asList(results);
+    }
+
+    @SuppressWarnings("unchecked") // StreamOffset... è un varargs generico dell'API di Spring Data Redis
+    private static List<MapRecord<String, String, String>> read(StreamOperations<String, String, String> streams,
+                                                               String resultKey, String lastId) {
+        List<MapRecord<String, String, String>> records = streams.read(
+                StreamReadOptions.empty().count(100).block(POLL_TIMEOUT),
+                StreamOffset.create(resultKey, ReadOffset.from(lastId)));
+        return records != null ? records : List.of();
+    }
+
+    private static PathStatistics join(CompletableFuture<PathStatistics> fallback) {
+        try {
+            return fallback.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * XTRIM MINID: elimina solo gli shard più vecchi del limite, mai quelli dei job in corso
+     */
+    private void trimOrphanShards() {
+        String minId = (System.currentTimeMillis() - ORPHAN_SHARD_RETENTION.toMillis()) + "-0";
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XTRIM",
+                    SHARD_STREAM.getBytes(StandardCharsets.UTF_8), "MINID".getBytes(StandardCharsets.UTF_8),
+                    "~".getBytes(StandardCharsets.UTF_8), minId.getBytes(StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            log.debug("Pulizia dello stream degli shard non riuscita: {}", e.getMessage());
+        }
+    }
+
+    private RecordId publish(String jobId, ShardTask task, int attempt) {
+        try {
+            Map<String, String> body = new HashMap<>();
+            body.put("jobId", jobId);
+            body.put("shard", String.valueOf(task.shard()));
+            body.put("attempt", String.valueOf(attempt));
+            body.put("task", objectMapper.writeValueAsString(task));
+            return redisTemplate.opsForStream().add(StreamRecords.string(body).withStreamKey(SHARD_STREAM));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Serializzazione shard Monte Carlo fallita", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package it.university.etfpac.service;
+
+/**
+ * Modifica di un'entità di dominio, pubblicata dai servizi dopo la scrittura e tradotta in
+ * invalidazioni mirate da {@link CacheInvalidator}. I template di portfolio sono un tipo a parte
+ * perché invalidano anche gli elenchi per profilo di rischio. {@code userId} è il proprietario
+ * dell'entità, quando ne ha uno, e serve ad aggiornare le statistiche dell'utente.
+ */
+public record DomainChangeEvent(Entity entity, Change change, String id, Long userId) {
+
+    public enum Entity {
+        SIMULATION, PORTFOLIO, TEMPLATE, ETF
+    }
+
+    public enum Change {
+        CREATED, UPDATED, DELETED
+    }
+
+    public static DomainChangeEvent created(Entity entity, Object id) {
+        return new DomainChangeEvent(entity, Change.CREATED, String.valueOf(id), null);
+    }
+
+    public static DomainChangeEvent created(Entity entity, Object id, Long userId) {
+        return new DomainChangeEvent(entity, Change.CREATED, String.valueOf(id), userId);
+    }
+
+    public static DomainChangeEvent updated(Entity entity, Object id) {
+        return new DomainChangeEvent(entity, Change.UPDATED, String.valueOf(id), null);
+    }
+
+    public static DomainChangeEvent updated(Entity entity, Object id, Long userId) {
+        return new DomainChangeEvent(entity, Change.UPDATED, String.valueOf(id), userId);
+    }
+
+    public static DomainChangeEvent deleted(Entity entity, Object id) {
+        return new DomainChangeEvent(entity, Change.DELETED, String.valueOf(id), null);
+    }
+
+    public static DomainChangeEvent deleted(Entity entity, Object id, Long userId) {
+        return new DomainChangeEvent(entity, Change.DELETED, String.valueOf(id), userId);
+    }
+}
@@ -0,0 +1,107 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.entity.ETF;
+import it.university.etfpac.exception.ResourceNotFoundException;
+import it.university.etfpac.repository.ETFRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Catalogo ETF in memoria.
+ *
+ * Mantiene uno snapshot immutabile e versionato degli ETF, sostituito in modo atomico quando
+ * i dati sul database cambiano. Le letture non toccano mai il database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ETFCatalog {
+
+    private final ETFRepository etfRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicReference<ETFCatalogSnapshot> current = new AtomicReference<>();
+
+    /**
+     * Snapshot corrente; al primo accesso viene caricato dal database
+     */
+    public ETFCatalogSnapshot snapshot() {
+        ETFCatalogSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = current.get();
+                if (snapshot == null) {
+                    snapshot = refresh();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    public long version() {
+        return snapshot().getVersion();
+    }
+
+    public ETF get(String id) {
+        return snapshot().find(id)
+                .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato: " + id));
+    }
+
+    public boolean contains(String id) {
+        return snapshot().contains(id);
+    }
+
+    /**
+     * Ricarica il catalogo dal database e sostituisce lo snapshot se il contenuto è cambiato
+     */
+    public synchronized ETFCatalogSnapshot refresh() {
+        ETFCatalogSnapshot loaded = new ETFCatalogSnapshot(etfRepository.findAll());
+        ETFCatalogSnapshot previous = current.get();
+
+        if (previous != null && previous.getVersion() == loaded.getVersion()) {
+            return previous;
+        }
+
+        current.set(loaded);
+        log.info("Catalogo ETF caricato: {} ETF, versione {}", loaded.size(), loaded.getVersionTag());
+        if (previous != null) {
+            eventPublisher.publishEvent(new ETFCatalogChangedEvent(previous.getVersion(), loaded.getVersion()));
+        }
+        return loaded;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        snapshot();
+    }
+
+    /**
+     * Controllo periodico leggero: ricarica solo se numero di ETF o ultimo aggiornamento sono cambiati
+     */
+    @Scheduled(fixedDelayString = "${etf.catalog.refresh-interval-ms:300000}",
+            initialDelayString = "${etf.catalog.refresh-interval-ms:300000}")
+    public void refreshIfChanged() {
+        ETFCatalogSnapshot snapshot = current.get();
+        if (snapshot == null) {
+            return;
+        }
+
+        try {
+            ETFRepository.CatalogStamp stamp = etfRepository.findCatalogStamp();
+            if (stamp.getCount() != snapshot.size() || !Objects.equals(stamp.getLastUpdate(), snapshot.getLastUpdate())) {
+                log.info("Rilevata modifica al catalogo ETF, ricaricamento in corso");
+                refresh();
+            }
+        } catch (Exception e) {
+            log.warn("Impossibile verificare lo stato del catalogo ETF: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package it.university.etfpac.service;
+
+/**
+ * Pubblicato quando il catalogo ETF in memoria viene sostituito da uno snapshot con contenuto diverso
+ */
+public record ETFCatalogChangedEvent(long previousVersion, long version) {
+}
@@ -0,0 +1,162 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.entity.ETF;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Fotografia immutabile del catalogo ETF con indici precalcolati.
+ *
+ * Gli ETF contenuti sono entità distaccate condivise tra thread: vanno trattati in sola lettura.
+ */
+public final class ETFCatalogSnapshot {
+
+    private static final Comparator<ETF> BY_EXPENSE = Comparator
+            .comparing(ETF::getExpense, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ETF::getId);
+
+    private static final Comparator<ETF> BY_ONE_YEAR_DESC = Comparator
+            .comparing(ETF::getOneYear, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ETF::getId);
+
+    private final long version;
+    private final LocalDateTime lastUpdate;
+    private final LocalDateTime loadedAt;
+    private final List<ETF> etfs;
+    private final Map<String, ETF> byId;
+    private final Map<ETF.RiskLevel, List<ETF>> byRisk;
+    private final ETF[] byExpense;
+    private final ETF[] byOneYearDesc;
+    private final ETFScreenIndex screenIndex;
+
+    public ETFCatalogSnapshot(Collection<ETF> source) {
+        List<ETF> sorted = new ArrayList<>(source);
+        sorted.sort(Comparator.comparing(ETF::getId));
+
+        Map<String, ETF> idIndex = new HashMap<>(Math.max(16, sorted.size() * 2));
+        Map<ETF.RiskLevel, List<ETF>> riskIndex = new EnumMap<>(ETF.RiskLevel.class);
+        for (ETF.RiskLevel level : ETF.RiskLevel.values()) {
+            riskIndex.put(level, new ArrayList<>());
+        }
+        LocalDateTime latest = null;
+        for (ETF etf : sorted) {
+            idIndex.put(etf.getId(), etf);
+            if (etf.getRisk() != null) {
+                riskIndex.get(etf.getRisk()).add(etf);
+            }
+            if (etf.getUpdatedAt() != null && (latest == null || etf.getUpdatedAt().isAfter(latest))) {
+                latest = etf.getUpdatedAt();
+            }
+        }
+        riskIndex.replaceAll((level, list) -> List.copyOf(list));
+
+        this.etfs = List.copyOf(sorted);
+        this.byId = Collections.unmodifiableMap(idIndex);
+        this.byRisk = Collections.unmodifiableMap(riskIndex);
+        this.byExpense = sorted.stream().sorted(BY_EXPENSE).toArray(ETF[]::new);
+        this.byOneYearDesc = sorted.stream().sorted(BY_ONE_YEAR_DESC).toArray(ETF[]::new);
+        this.screenIndex = new ETFScreenIndex(this.etfs);
+        this.lastUpdate = latest;
+        this.loadedAt = LocalDateTime.now();
+        this.version = fingerprint(sorted);
+    }
+
+    /**
+     * Versione del catalogo: dipende solo dal contenuto, quindi è la stessa su tutti i nodi
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getVersionTag() {
+        return Long.toHexString(version);
+    }
+
+    public LocalDateTime getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    public int size() {
+        return etfs.size();
+    }
+
+    public List<ETF> all() {
+        return etfs;
+    }
+
+    public Optional<ETF> find(String id) {
+        return Optional.ofNullable(id != null ? byId.get(id) : null);
+    }
+
+    public boolean contains(String id) {
+        return id != null && byId.containsKey(id);
+    }
+
+    /**
+     * Restituisce gli ETF trovati tra gli ID richiesti, indicizzati per ID
+     */
+    public Map<String, ETF> findAll(Collection<String> ids) {
+        Map<String, ETF> found = new HashMap<>();
+        for (String id : ids) {
+            ETF etf = id != null ? byId.get(id) : null;
+            if (etf != null) {
+                found.put(id, etf);
+            }
+        }
+        return found;
+    }
+
+    public List<ETF> byRisk(ETF.RiskLevel risk) {
+        return byRisk.getOrDefault(risk, List.of());
+    }
+
+    /**
+     * ETF con spesa non superiore alla soglia, in ordine di spesa crescente
+     */
+    public List<ETF> lowCost(double maxExpense) {
+        int low = 0;
+        int high = byExpense.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Double expense = byExpense[mid].getExpense();
+            if (expense != null && expense <= maxExpense) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return List.of(Arrays.copyOfRange(byExpense, 0, low));
+    }
+
+    /**
+     * Primi ETF per rendimento a un anno
+     */
+    public List<ETF> topPerforming(int limit) {
+        int count = Math.max(0, Math.min(limit, byOneYearDesc.length));
+        return List.of(Arrays.copyOfRange(byOneYearDesc, 0, count));
+    }
+
+    /**
+     * Indici colonnari per lo screening, allineati all'ordine per ID di {@link #all()}
+     */
+    public ETFScreenIndex screenIndex() {
+        return screenIndex;
+    }
+
+    private static long fingerprint(List<ETF> sorted) {
+        long hash = 1125899906842597L;
+        for (ETF etf : sorted) {
+            int etfHash = Objects.hash(etf.getId(), etf.getName(), etf.getTicker(), etf.getExpense(),
+                    etf.getRisk() != null ? etf.getRisk().name() : null, etf.getSector(), etf.getAum(),
+                    etf.getDividend(), etf.getBeta(), etf.getSharpe(), etf.getMaxDrawdown(), etf.getYtd(),
+                    etf.getOneYear(), etf.getThreeYear(), etf.getFiveYear(), etf.getUpdatedAt());
+            hash = 31 * hash + etfHash;
+        }
+        return hash;
+    }
+}
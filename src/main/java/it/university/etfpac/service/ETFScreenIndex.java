@@ -0,0 +1,218 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.entity.ETF;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Indici colonnari per lo screening multi-criterio del catalogo ETF.
+ *
+ * Per ogni metrica mantiene i valori in un array primitivo e la permutazione che li ordina:
+ * i filtri di intervallo diventano due ricerche binarie più un BitSet, l'ordinamento è una
+ * semplice scansione della permutazione precalcolata.
+ */
+public final class ETFScreenIndex {
+
+    public enum Metric {
+        EXPENSE(ETF::getExpense),
+        BETA(ETF::getBeta),
+        SHARPE(ETF::getSharpe),
+        MAX_DRAWDOWN(ETF::getMaxDrawdown),
+        YTD(ETF::getYtd),
+        ONE_YEAR(ETF::getOneYear),
+        THREE_YEAR(ETF::getThreeYear),
+        FIVE_YEAR(ETF::getFiveYear);
+
+        private final Function<ETF, Double> extractor;
+
+        Metric(Function<ETF, Double> extractor) {
+            this.extractor = extractor;
+        }
+    }
+
+    private final ETF[] rows;
+    private final double[][] sortedValues;
+    private final int[][] ascending;
+    private final int[] validCount;
+    private final Map<ETF.RiskLevel, BitSet> riskBits;
+    private final Map<String, BitSet> sectorBits;
+
+    ETFScreenIndex(List<ETF> etfs) {
+        this.rows = etfs.toArray(new ETF[0]);
+        int metrics = Metric.values().length;
+        this.sortedValues = new double[metrics][];
+        this.ascending = new int[metrics][];
+        this.validCount = new int[metrics];
+
+        for (Metric metric : Metric.values()) {
+            buildColumn(metric);
+        }
+
+        Map<ETF.RiskLevel, BitSet> risks = new EnumMap<>(ETF.RiskLevel.class);
+        Map<String, BitSet> sectors = new HashMap<>();
+        for (int row = 0; row < rows.length; row++) {
+            ETF etf = rows[row];
+            if (etf.getRisk() != null) {
+                risks.computeIfAbsent(etf.getRisk(), level -> new BitSet(rows.length)).set(row);
+            }
+            if (etf.getSector() != null) {
+                sectors.computeIfAbsent(normalize(etf.getSector()), sector -> new BitSet(rows.length)).set(row);
+            }
+        }
+        this.riskBits = risks;
+        this.sectorBits = sectors;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    public BitSet all() {
+        BitSet bits = new BitSet(rows.length);
+        bits.set(0, rows.length);
+        return bits;
+    }
+
+    public BitSet risks(Collection<ETF.RiskLevel> levels) {
+        BitSet bits = new BitSet(rows.length);
+        for (ETF.RiskLevel level : levels) {
+            BitSet levelBits = riskBits.get(level);
+            if (levelBits != null) {
+                bits.or(levelBits);
+            }
+        }
+        return bits;
+    }
+
+    public BitSet sectors(Collection<String> sectors) {
+        BitSet bits = new BitSet(rows.length);
+        for (String sector : sectors) {
+            BitSet sectorSet = sector != null ? sectorBits.get(normalize(sector)) : null;
+            if (sectorSet != null) {
+                bits.or(sectorSet);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * ETF con valore della metrica nell'intervallo chiuso [min, max]; i limiti null sono aperti.
+     * Gli ETF senza valore per la metrica sono sempre esclusi.
+     */
+    public BitSet range(Metric metric, Double min, Double max) {
+        double[] values = sortedValues[metric.ordinal()];
+        int[] permutation = ascending[metric.ordinal()];
+        int valid = validCount[metric.ordinal()];
+
+        int from = min != null ? lowerBound(values, valid, min) : 0;
+        int to = max != null ? upperBound(values, valid, max) : valid;
+
+        BitSet bits = new BitSet(rows.length);
+        for (int k = from; k < to; k++) {
+            bits.set(permutation[k]);
+        }
+        return bits;
+    }
+
+    /**
+     * Restituisce la pagina richiesta degli ETF selezionati, ordinati per metrica.
+     * Con metrica null l'ordine è quello per ID del catalogo. I valori mancanti vanno sempre in fondo.
+     */
+    public List<ETF> page(BitSet selection, Metric sortBy, boolean descending, int offset, int limit) {
+        List<ETF> page = new ArrayList<>(Math.min(limit, rows.length));
+        if (limit <= 0) {
+            return page;
+        }
+
+        int skipped = 0;
+        for (int k = 0; k < rows.length && page.size() < limit; k++) {
+            int row = rowAt(sortBy, descending, k);
+            if (!selection.get(row)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            page.add(rows[row]);
+        }
+        return page;
+    }
+
+    private int rowAt(Metric sortBy, boolean descending, int k) {
+        if (sortBy == null) {
+            return descending ? rows.length - 1 - k : k;
+        }
+        int[] permutation = ascending[sortBy.ordinal()];
+        int valid = validCount[sortBy.ordinal()];
+        if (!descending || k >= valid) {
+            return permutation[k];
+        }
+        return permutation[valid - 1 - k];
+    }
+
+    private void buildColumn(Metric metric) {
+        int n = rows.length;
+        Integer[] order = new Integer[n];
+        double[] column = new double[n];
+        for (int row = 0; row < n; row++) {
+            Double value = metric.extractor.apply(rows[row]);
+            column[row] = value != null ? value : Double.NaN;
+            order[row] = row;
+        }
+
+        // I NaN finiscono in fondo; a parità di valore vale l'ordine per ID
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Double.compare(column[a], column[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+
+        int[] permutation = new int[n];
+        double[] sorted = new double[n];
+        int valid = 0;
+        for (int k = 0; k < n; k++) {
+            permutation[k] = order[k];
+            sorted[k] = column[order[k]];
+            if (!Double.isNaN(sorted[k])) {
+                valid++;
+            }
+        }
+
+        ascending[metric.ordinal()] = permutation;
+        sortedValues[metric.ordinal()] = sorted;
+        validCount[metric.ordinal()] = valid;
+    }
+
+    private static int lowerBound(double[] values, int length, double key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(double[] values, int length, double key) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,37 +1,46 @@
 package it.university.etfpac.service;
 
+import it.university.etfpac.dto.request.ETFScreenRequest;
 import it.university.etfpac.dto.response.ETFResponse;
 import it.university.etfpac.entity.ETF;
 import it.university.etfpac.exception.ResourceNotFoundException;
-import it.university.etfpac.repository.ETFRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@Transactional(readOnly = true)
 public class ETFService {
 
-    private final ETFRepository etfRepository;
+    private final ETFCatalog etfCatalog;
 
-    @Cacheable("etfs")
     public List<ETFResponse> getAllETFs() {
-        log.info("CACHE MISS - Caricamento ETF da DATABASE");
-        return etfRepository.findAll().stream()
+        log.info("Recupero tutti gli ETF dal catalogo");
+        return etfCatalog.snapshot().all().stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Versione del catalogo per ETag e Last-Modified delle letture ETF
+     */
+    public ResourceVersion getCatalogVersion() {
+        ETFCatalogSnapshot snapshot = etfCatalog.snapshot();
+        return ResourceVersion.ofCatalog("etfs", snapshot.getVersionTag(), snapshot.getLastUpdate());
+    }
+
     public ETFResponse getETFById(String id) {
         log.info("Recupero ETF con ID: {}", id);
-        ETF etf = etfRepository.findById(id)
+        ETF etf = etfCatalog.snapshot().find(id)
                 .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato con ID: " + id));
         return convertToResponse(etf);
     }
@@ -39,26 +48,86 @@ public class ETFService {
     public List<ETFResponse> getETFsByRisk(String riskLevel) {
         log.info("Recupero ETF per livello di rischio: {}", riskLevel);
         ETF.RiskLevel risk = ETF.RiskLevel.valueOf(riskLevel.toUpperCase());
-        return etfRepository.findByRisk(risk).stream()
+        return etfCatalog.snapshot().byRisk(risk).stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
     }
 
-    public List<ETFResponse> getTopPerformingETFs() {
-        log.info("Recupero ETF con migliori performance");
-        return etfRepository.findTopPerformingETFs().stream()
-                .limit(10)
+    public List<ETFResponse> getTopPerformingETFs(int limit) {
+        log.info("Recupero top {} ETF per performance", limit);
+        return etfCatalog.snapshot().topPerforming(limit).stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
     }
 
     public List<ETFResponse> getLowCostETFs(Double maxExpense) {
         log.info("Recupero ETF a basso costo con spese max: {}", maxExpense);
-        return etfRepository.findLowCostETFs(maxExpense).stream()
+        return etfCatalog.snapshot().lowCost(maxExpense).stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Screening multi-criterio sul catalogo in memoria: i filtri sono intersezioni di BitSet,
+     * l'ordinamento usa le permutazioni precalcolate per metrica
+     */
+    public Page<ETFResponse> screenETFs(ETFScreenRequest request) {
+        ETFScreenIndex index = etfCatalog.snapshot().screenIndex();
+        BitSet selection = index.all();
+
+        if (request.getRisks() != null && !request.getRisks().isEmpty()) {
+            selection.and(index.risks(request.getRisks().stream()
+                    .map(risk -> ETF.RiskLevel.valueOf(risk.toUpperCase(Locale.ROOT)))
+                    .collect(Collectors.toSet())));
+        }
+        if (request.getSectors() != null && !request.getSectors().isEmpty()) {
+            selection.and(index.sectors(request.getSectors()));
+        }
+        if (request.getMinExpense() != null || request.getMaxExpense() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.EXPENSE, request.getMinExpense(), request.getMaxExpense()));
+        }
+        if (request.getMinSharpe() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.SHARPE, request.getMinSharpe(), null));
+        }
+        if (request.getMaxDrawdown() != null) {
+            // I drawdown sono memorizzati come valori negativi
+            selection.and(index.range(ETFScreenIndex.Metric.MAX_DRAWDOWN, -request.getMaxDrawdown(), null));
+        }
+        if (request.getMinBeta() != null || request.getMaxBeta() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.BETA, request.getMinBeta(), request.getMaxBeta()));
+        }
+        if (request.getMinYtd() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.YTD, request.getMinYtd(), null));
+        }
+        if (request.getMinOneYear() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.ONE_YEAR, request.getMinOneYear(), null));
+        }
+        if (request.getMinThreeYear() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.THREE_YEAR, request.getMinThreeYear(), null));
+        }
+        if (request.getMinFiveYear() != null) {
+            selection.and(index.range(ETFScreenIndex.Metric.FIVE_YEAR, request.getMinFiveYear(), null));
+        }
+
+        ETFScreenIndex.Metric sortBy = request.getSortBy() != null
+                ? ETFScreenIndex.Metric.valueOf(request.getSortBy().toUpperCase(Locale.ROOT))
+                : null;
+        boolean descending = !"ASC".equalsIgnoreCase(request.getDirection());
+        int page = request.getPage() != null ? request.getPage() : 0;
+        int size = request.getSize() != null ? request.getSize() : 20;
+
+        // In long: page * size può superare Integer.MAX_VALUE, oltre il risultato la pagina è vuota
+        long offset = (long) page * size;
+        int total = selection.cardinality();
+        List<ETFResponse> content = offset >= total
+                ? List.of()
+                : index.page(selection, sortBy, descending, (int) offset, size).stream()
+                        .map(this::convertToResponse)
+                        .collect(Collectors.toList());
+
+        return new PageImpl<>(content, PageRequest.of(page, size), total);
+    }
+
     private ETFResponse convertToResponse(ETF etf) {
         return ETFResponse.builder()
                 .id(etf.getId())
@@ -0,0 +1,65 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.response.CursorPage;
+import it.university.etfpac.exception.BadRequestException;
+import org.springframework.data.domain.Limit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Posizione nella paginazione keyset su {@code (created_at, id)} in ordine decrescente: l'ultima riga
+ * restituita. Verso il client viaggia come stringa opaca; la pagina successiva parte dalle righe
+ * strettamente precedenti, quindi la latenza non dipende da quanto si è già scorso.
+ */
+public record KeysetCursor(LocalDateTime createdAt, Long id) {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, separator)), Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Cursore di paginazione non valido");
+        }
+    }
+
+    public static void validateSize(int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("La dimensione della pagina deve essere tra 1 e " + MAX_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Una riga oltre la pagina: se arriva esiste la pagina successiva, senza contare le righe
+     */
+    public static Limit limit(int size) {
+        return Limit.of(size + 1);
+    }
+
+    /**
+     * Costruisce la pagina dalle righe lette con {@link #limit(int)}; il cursore è l'ultima riga restituita
+     */
+    public static <E, T> CursorPage<T> page(List<E> rows, int size, Function<E, KeysetCursor> position,
+                                            Function<List<E>, List<T>> converter) {
+        boolean hasNext = rows.size() > size;
+        List<E> content = hasNext ? rows.subList(0, size) : rows;
+        return CursorPage.<T>builder()
+                .content(converter.apply(content))
+                .size(content.size())
+                .hasNext(hasNext)
+                .nextCursor(hasNext ? position.apply(content.get(content.size() - 1)).encode() : null)
+                .build();
+    }
+}
@@ -0,0 +1,327 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.request.SimulationRequest;
+import it.university.etfpac.dto.response.MonteCarloResponse;
+import it.university.etfpac.entity.Simulation;
+import it.university.etfpac.monitoring.SimulationMetrics;
+import it.university.etfpac.monitoring.SimulationPhaseEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.random.SobolSequenceGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Motore Monte Carlo per piani di accumulo con riduzione della varianza.
+ *
+ * I rendimenti mensili del portafoglio sono lognormali con media e volatilità ricavate dal motore
+ * di rischio. Tecniche selezionabili per richiesta:
+ * - variabili antitetiche: ogni vettore di shock z è usato anche come −z;
+ * - variabile di controllo: il valore finale di un PAC a rata fissa sugli stessi shock, la cui
+ *   media è nota in forma chiusa, corregge la stima del valore finale medio;
+ * - campionamento quasi-casuale Sobol con shift casuale, in {@link #REPLICATES} repliche
+ *   indipendenti da cui si ricava l'errore standard.
+ *
+ * Le distribuzioni mensili sono accumulate in quantile sketch ({@link PathStatistics}) per replica e
+ * combinate alla fine: la memoria non cresce con il numero di percorsi. Ogni replica è uno shard
+ * ({@link ShardTask}) che può essere calcolato anche da altri nodi.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MonteCarloEngine {
+
+    static final int DEFAULT_PATHS = 1000;
+    static final int REPLICATES = 8;
+    private static final double Z_95 = 1.959963984540054;
+
+    private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(null, 0, 1);
+
+    private final PortfolioRiskEngine riskEngine;
+    private final SimulationMetrics metrics;
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
+    private final ObjectProvider<DistributedMonteCarloCoordinator> coordinator;
+
+    @Value("${montecarlo.distributed.min-paths:200000}")
+    private long distributedMinPaths;
+
+    @Value("${montecarlo.distributed.shard-paths:50000}")
+    private long shardPaths;
+
+    public MonteCarloResponse run(SimulationRequest request) {
+        Simulation.Strategy strategy = Simulation.Strategy.valueOf(request.getStrategy().toUpperCase());
+        PortfolioRiskMetrics risk = riskEngine.evaluate(request.getEtfAllocation());
+
+        boolean antithetic = Boolean.TRUE.equals(request.getAntithetic());
+        boolean controlVariate = Boolean.TRUE.equals(request.getControlVariate());
+        boolean sobol = "SOBOL".equalsIgnoreCase(request.getSampling());
+        int requestedPaths = request.getPaths() != null ? request.getPaths() : DEFAULT_PATHS;
+        int units = antithetic ? (requestedPaths + 1) / 2 : requestedPaths;
+        long seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+
+        ShardTask job = new ShardTask(strategy, request.getInitialAmount(), request.getMonthlyAmount(),
+                request.getInvestmentPeriod(), risk.getExpectedReturn(), risk.getVolatility(),
+                antithetic, sobol, seed, 0, units);
+        Plan plan = new Plan(job);
+
+        SimulationPhaseEvent event = SimulationPhaseEvent.start("monteCarlo", "paths");
+        PathStatistics[] replicates = metrics.recordEngineRun(strategy.name(), plan.months, units * plan.pathsPerUnit,
+                () -> simulate(job, plan.pathsPerUnit));
+        event.months(plan.months).etfCount(request.getEtfAllocation().size()).finish();
+
+        log.info("Monte Carlo completato: {} percorsi, {} mesi, campionamento {}{}{}",
+                units * plan.pathsPerUnit, plan.months, sobol ? "SOBOL" : "PSEUDO",
+                antithetic ? ", antitetico" : "", controlVariate ? ", variabile di controllo" : "");
+
+        return summarize(plan, replicates, controlVariate, sobol)
+                .seed(seed)
+                .sampling(sobol ? "SOBOL" : "PSEUDO")
+                .antithetic(antithetic)
+                .controlVariate(controlVariate)
+                .expectedReturn(risk.getExpectedReturn())
+                .volatility(risk.getVolatility())
+                .build();
+    }
+
+    /**
+     * Divide il job in shard; oltre la soglia configurata, se la modalità distribuita è attiva,
+     * gli shard vengono eseguiti dai worker di tutti i nodi tramite Redis Streams
+     */
+    private PathStatistics[] simulate(ShardTask job, int pathsPerUnit) {
+        int units = job.units();
+        long paths = (long) units * pathsPerUnit;
+        DistributedMonteCarloCoordinator distributed = coordinator.getIfAvailable();
+        boolean useCluster = distributed != null && paths >= distributedMinPaths;
+
+        int shards = useCluster
+                ? (int) Math.min(units, Math.max(REPLICATES, (paths + shardPaths - 1) / shardPaths))
+                : Math.min(REPLICATES, units);
+        List<ShardTask> tasks = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int shardUnits = shardStart(units, shards, shard + 1) - shardStart(units, shards, shard);
+            tasks.add(new ShardTask(job.strategy(), job.initialAmount(), job.monthlyAmount(), job.months(),
+                    job.annualReturn(), job.annualVolatility(), job.antithetic(), job.sobol(), job.seed(),
+                    shard, shardUnits));
+        }
+
+        if (useCluster) {
+            log.info("Monte Carlo distribuito: {} percorsi in {} shard", paths, shards);
+            return distributed.execute(tasks, this::simulateShard).toArray(PathStatistics[]::new);
+        }
+
+        PathStatistics[] statistics = new PathStatistics[shards];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(shards);
+        for (ShardTask task : tasks) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> statistics[task.shard()] = simulateShard(task), computeExecutor));
+        }
+        futures.forEach(CompletableFuture::join);
+        return statistics;
+    }
+
+    private static int shardStart(int units, int shards, int shard) {
+        return (int) ((long) units * shard / shards);
+    }
+
+    /**
+     * Ogni shard ha il proprio generatore derivato da (seed, shard): il risultato non dipende
+     * dall'ordine di esecuzione né dal nodo che lo calcola
+     */
+    public PathStatistics simulateShard(ShardTask task) {
+        Plan plan = new Plan(task);
+        boolean sobol = task.sobol();
+        int units = task.units();
+        SplittableRandom random = new SplittableRandom(task.seed() ^ (0x9E3779B97F4A7C15L * (task.shard() + 1)));
+        PathStatistics statistics = new PathStatistics(plan.months);
+        double[] shocks = new double[plan.months];
+
+        SobolSequenceGenerator generator = null;
+        double[] shift = null;
+        if (sobol) {
+            // Stesso insieme di punti in ogni replica, con uno shift casuale diverso (Cranley-Patterson)
+            generator = new SobolSequenceGenerator(plan.months);
+            generator.skipTo(1);
+            shift = new double[plan.months];
+            for (int m = 0; m < plan.months; m++) {
+                shift[m] = random.nextDouble();
+            }
+        }
+
+        for (int unit = 0; unit < units; unit++) {
+            if (sobol) {
+                double[] point = generator.nextVector();
+                for (int m = 0; m < plan.months; m++) {
+                    double u = point[m] + shift[m];
+                    u = u - Math.floor(u);
+                    shocks[m] = STANDARD_NORMAL.inverseCumulativeProbability(Math.min(Math.max(u, 1e-12), 1 - 1e-12));
+                }
+            } else {
+                for (int m = 0; m < plan.months; m++) {
+                    shocks[m] = random.nextGaussian();
+                }
+            }
+
+            double unitValue = 0;
+            double unitControl = 0;
+            for (int k = 0; k < plan.pathsPerUnit; k++) {
+                double[] outcome = simulatePath(plan, shocks, k == 0 ? 1.0 : -1.0, statistics);
+                unitValue += outcome[0] / plan.pathsPerUnit;
+                unitControl += outcome[1] / plan.pathsPerUnit;
+            }
+            statistics.addUnit(unitValue, unitControl);
+        }
+        return statistics;
+    }
+
+    /**
+     * Simula un percorso registrando i valori mensili; restituisce valore finale e variabile di controllo
+     */
+    private static double[] simulatePath(Plan plan, double[] shocks, double sign, PathStatistics statistics) {
+        double value = plan.initialAmount;
+        double totalInvested = plan.initialAmount;
+        double dcaValue = plan.initialAmount;
+        statistics.addMonthValue(0, value);
+
+        for (int month = 1; month <= plan.months; month++) {
+            double z = sign * shocks[month - 1];
+            double monthlyReturn = Math.exp(plan.monthlyDrift + plan.monthlyVolatility * z) - 1;
+
+            value *= 1 + monthlyReturn;
+            dcaValue = dcaValue * (1 + monthlyReturn) + plan.monthlyAmount;
+
+            double noise = plan.usesNoise ? STANDARD_NORMAL.cumulativeProbability(z) : 0.5;
+            double contribution = SimulationEngine.monthlyContribution(plan.strategy, plan.monthlyAmount, month,
+                    monthlyReturn, value, totalInvested, noise);
+            value += contribution;
+            totalInvested += contribution;
+            statistics.addMonthValue(month, value);
+        }
+
+        statistics.addPathOutcome(value, totalInvested);
+        return new double[]{value, dcaValue};
+    }
+
+    private MonteCarloResponse.MonteCarloResponseBuilder summarize(Plan plan, PathStatistics[] replicates,
+                                                                   boolean controlVariate, boolean sobol) {
+        PathStatistics total = new PathStatistics(plan.months);
+        for (PathStatistics replicate : replicates) {
+            total.merge(replicate);
+        }
+
+        double controlExpectation = plan.dcaExpectedFinalValue();
+        double beta = controlVariate && total.varianceControl() > 0
+                ? total.covariance() / total.varianceControl() : 0.0;
+
+        double estimate;
+        Double standardError;
+        if (sobol) {
+            // Con campionamento quasi-casuale l'errore si stima dalla dispersione tra repliche
+            double[] replicateMeans = new double[replicates.length];
+            for (int r = 0; r < replicates.length; r++) {
+                replicateMeans[r] = replicates[r].meanValue() - beta * (replicates[r].meanControl() - controlExpectation);
+            }
+            estimate = mean(replicateMeans);
+            standardError = replicateMeans.length > 1
+                    ? standardDeviation(replicateMeans) / Math.sqrt(replicateMeans.length) : null;
+        } else {
+            estimate = total.meanValue() - beta * (total.meanControl() - controlExpectation);
+            // Var(Y − βX) = Var(Y) − 2β·Cov(Y, X) + β²·Var(X)
+            double adjustedVariance = total.varianceValue() - 2 * beta * total.covariance()
+                    + beta * beta * total.varianceControl();
+            standardError = total.units() > 1
+                    ? Math.sqrt(Math.max(adjustedVariance, 0) / total.units()) : null;
+        }
+
+        List<MonteCarloResponse.MonthDistribution> distribution = new ArrayList<>(plan.months + 1);
+        for (int month = 0; month <= plan.months; month++) {
+            distribution.add(MonteCarloResponse.MonthDistribution.builder()
+                    .month(month)
+                    .p5(total.quantile(month, 0.05))
+                    .p25(total.quantile(month, 0.25))
+                    .p50(total.quantile(month, 0.50))
+                    .p75(total.quantile(month, 0.75))
+                    .p95(total.quantile(month, 0.95))
+                    .build());
+        }
+
+        return MonteCarloResponse.builder()
+                .paths((int) total.paths())
+                .months(plan.months)
+                .meanFinalValue(estimate)
+                .standardError(standardError)
+                .relativeStandardError(standardError != null && estimate != 0 ? standardError / estimate : null)
+                .confidenceLow(standardError != null ? estimate - Z_95 * standardError : null)
+                .confidenceHigh(standardError != null ? estimate + Z_95 * standardError : null)
+                .dcaExpectedFinalValue(controlExpectation)
+                .meanTotalInvested(total.meanInvested())
+                .probabilityOfLoss(total.lossProbability())
+                .distribution(distribution);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.length > 0 ? sum / values.length : 0.0;
+    }
+
+    private static double standardDeviation(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    /**
+     * Parametri del piano di accumulo e del modello dei rendimenti mensili
+     */
+    static final class Plan {
+        final Simulation.Strategy strategy;
+        final double initialAmount;
+        final double monthlyAmount;
+        final int months;
+        final double monthlyDrift;
+        final double monthlyVolatility;
+        final double monthlyGrowth;
+        final int pathsPerUnit;
+        final boolean usesNoise;
+
+        Plan(ShardTask task) {
+            this.strategy = task.strategy();
+            this.initialAmount = task.initialAmount();
+            this.monthlyAmount = task.monthlyAmount();
+            this.months = task.months();
+            this.monthlyVolatility = task.annualVolatility() / Math.sqrt(12);
+            this.monthlyDrift = task.annualReturn() / 12 - monthlyVolatility * monthlyVolatility / 2;
+            this.monthlyGrowth = Math.exp(task.annualReturn() / 12);
+            this.pathsPerUnit = task.antithetic() ? 2 : 1;
+            // Solo queste strategie usano la componente casuale del versamento
+            this.usesNoise = strategy == Simulation.Strategy.SMART_BETA || strategy == Simulation.Strategy.TACTICAL;
+        }
+
+        /**
+         * E[V_T] di un PAC a rata fissa: I·g^T + R·(g^T − 1)/(g − 1), con g = E[1 + r] mensile
+         */
+        double dcaExpectedFinalValue() {
+            double growth = Math.pow(monthlyGrowth, months);
+            double annuity = Math.abs(monthlyGrowth - 1) < 1e-12
+                    ? months
+                    : (growth - 1) / (monthlyGrowth - 1);
+            return initialAmount * growth + monthlyAmount * annuity;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package it.university.etfpac.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Worker degli shard Monte Carlo: ogni nodo legge dallo stream degli shard come membro del consumer
+ * group condiviso, segnala la presa in carico, calcola lo shard e pubblica il risultato parziale
+ * sullo stream del job.
+ */
+@Component
+@ConditionalOnProperty(name = "montecarlo.distributed.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class MonteCarloShardWorker {
+
+    private static final Duration RESULT_TTL = Duration.ofMinutes(10);
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MonteCarloEngine monteCarloEngine;
+
+    @Value("${montecarlo.distributed.worker-threads:2}")
+    private int workerThreads;
+
+    private final String workerId = UUID.randomUUID().toString().substring(0, 8);
+    private StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        createGroup();
+
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(POLL_TIMEOUT)
+                        .batchSize(1)
+                        .build();
+        container = StreamMessageListenerContainer.create(connectionFactory, options);
+
+        // Una sottoscrizione per thread: ognuna è un consumer distinto del gruppo. Con il default un
+        // solo errore di Redis cancellerebbe la sottoscrizione, fermando il worker senza segnalarlo
+        for (int i = 0; i < workerThreads; i++) {
+            container.register(StreamReadRequest
+                            .builder(StreamOffset.create(DistributedMonteCarloCoordinator.SHARD_STREAM, ReadOffset.lastConsumed()))
+                            .consumer(Consumer.from(DistributedMonteCarloCoordinator.WORKER_GROUP, workerId + "-" + i))
+                            .cancelOnError(e -> false)
+                            .errorHandler(this::handleError)
+                            .build(),
+                    this::process);
+        }
+        container.start();
+        log.info("Worker Monte Carlo {} avviato con {} thread", workerId, workerThreads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    private void createGroup() {
+        try {
+            redisTemplate.opsForStream().createGroup(DistributedMonteCarloCoordinator.SHARD_STREAM,
+                    ReadOffset.latest(), DistributedMonteCarloCoordinator.WORKER_GROUP);
+        } catch (RuntimeException e) {
+            // Il gruppo esiste già (BUSYGROUP): creato da un altro nodo
+            log.debug("Consumer group Monte Carlo già presente: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Eseguito sul thread di lettura: la pausa evita un ciclo di errori continui finché Redis non torna
+     * disponibile. Se Redis ha perso lo stream (riavvio senza persistenza) il gruppo viene ricreato.
+     */
+    private void handleError(Throwable e) {
+        log.warn("Lettura degli shard Monte Carlo fallita sul worker {}: {}", workerId, e.getMessage());
+        if (String.valueOf(e.getMessage()).contains("NOGROUP")) {
+            createGroup();
+        }
+        try {
+            Thread.sleep(POLL_TIMEOUT.toMillis());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(MapRecord<String, String, String> message) {
+        Map<String, String> body = message.getValue();
+        String jobId = body.get("jobId");
+        String resultKey = DistributedMonteCarloCoordinator.RESULT_STREAM_PREFIX + jobId;
+
+        Map<String, String> result = new HashMap<>();
+        result.put("shard", body.get("shard"));
+        result.put("attempt", body.get("attempt"));
+        result.put("worker", workerId);
+
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.hasKey(DistributedMonteCarloCoordinator.JOB_KEY_PREFIX + jobId))) {
+                log.debug("Shard {} ignorato: job {} non più attivo", body.get("shard"), jobId);
+                return;
+            }
+
+            // Da qui decorre il timeout dello shard nel coordinatore
+            Map<String, String> claim = new HashMap<>(result);
+            claim.put("claimed", "1");
+            publish(resultKey, claim);
+
+            ShardTask task = objectMapper.readValue(body.get("task"), ShardTask.class);
+            PathStatistics statistics = monteCarloEngine.simulateShard(task);
+            result.put("payload", Base64.getEncoder().encodeToString(statistics.toBytes()));
+            publish(resultKey, result);
+        } catch (Exception e) {
+            log.error("Errore nello shard {} del job {}", body.get("shard"), jobId, e);
+            result.put("error", String.valueOf(e.getMessage()));
+            publish(resultKey, result);
+        } finally {
+            redisTemplate.opsForStream().acknowledge(DistributedMonteCarloCoordinator.SHARD_STREAM,
+                    DistributedMonteCarloCoordinator.WORKER_GROUP, message.getId());
+        }
+    }
+
+    private void publish(String resultKey, Map<String, String> result) {
+        redisTemplate.opsForStream().add(StreamRecords.string(result).withStreamKey(resultKey));
+        redisTemplate.expire(resultKey, RESULT_TTL);
+    }
+}
@@ -0,0 +1,208 @@
+package it.university.etfpac.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.university.etfpac.exception.ServiceUnavailableException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool di buffer off-heap per le matrici dei percorsi.
+ *
+ * Le matrici grandi (scenari × mesi × ETF) non stanno nell'heap della JVM: vengono allocate con
+ * {@link ByteBuffer#allocateDirect(int)} in classi di dimensione potenze di due e, al rilascio,
+ * tornate al pool per il job successivo invece di essere lasciate al GC. La memoria totale è
+ * limitata da {@code offheap.max-bytes}, quella tenuta libera nel pool da {@code offheap.pool.max-idle-bytes}.
+ * Oltre il limite {@link #acquire(long)} risponde con {@link ServiceUnavailableException}: la memoria
+ * torna disponibile quando i job in corso chiudono i loro buffer.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OffHeapBufferPool {
+
+    private static final int MIN_CLASS_BYTES = 64 * 1024;
+    private static final long MAX_BUFFER_BYTES = 1L << 30;
+
+    private final MeterRegistry registry;
+
+    @Value("${offheap.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${offheap.pool.max-idle-bytes:268435456}")
+    private long maxIdleBytes;
+
+    private final Map<Integer, ArrayDeque<ByteBuffer>> idle = new HashMap<>();
+    private long allocatedBytes;
+    private long idleBytes;
+
+    private Counter reused;
+    private Counter allocated;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("etfpac.offheap.allocated.bytes", this, pool -> pool.snapshot()[0])
+                .description("Memoria off-heap allocata per le matrici dei percorsi")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("etfpac.offheap.idle.bytes", this, pool -> pool.snapshot()[1])
+                .description("Memoria off-heap libera trattenuta nel pool")
+                .baseUnit("bytes")
+                .register(registry);
+        reused = Counter.builder("etfpac.offheap.buffers")
+                .description("Buffer off-heap consegnati")
+                .tag("source", "pool")
+                .register(registry);
+        allocated = Counter.builder("etfpac.offheap.buffers")
+                .description("Buffer off-heap consegnati")
+                .tag("source", "allocation")
+                .register(registry);
+    }
+
+    /**
+     * Memoria effettivamente occupata da un buffer di {@code doubles} valori, arrotondata alla classe di dimensione
+     */
+    public static long bufferBytes(long doubles) {
+        return sizeClass(doubles * Double.BYTES);
+    }
+
+    /**
+     * Buffer più grande che il pool può consegnare
+     */
+    public long maxBufferBytes() {
+        return Math.min(maxBytes, MAX_BUFFER_BYTES);
+    }
+
+    /**
+     * Buffer di almeno {@code doubles} valori; il contenuto iniziale non è azzerato
+     */
+    public PathBuffer acquire(long doubles) {
+        long bytes = bufferBytes(doubles);
+        if (bytes > maxBufferBytes()) {
+            throw new IllegalArgumentException(String.format(
+                    "Buffer off-heap troppo grande: %d byte (massimo %d)", bytes, maxBufferBytes()));
+        }
+        int sizeClass = (int) bytes;
+
+        ByteBuffer buffer;
+        synchronized (this) {
+            ArrayDeque<ByteBuffer> free = idle.get(sizeClass);
+            buffer = free != null ? free.pollFirst() : null;
+            if (buffer != null) {
+                idleBytes -= sizeClass;
+            } else {
+                // Prima di superare il limite si liberano i buffer inattivi di altre classi
+                while (allocatedBytes + sizeClass > maxBytes && idleBytes > 0) {
+                    dropIdleBuffer();
+                }
+                if (allocatedBytes + sizeClass > maxBytes) {
+                    throw new ServiceUnavailableException(String.format(
+                            "Memoria off-heap esaurita: %d byte in uso, richiesti %d (limite %d)",
+                            allocatedBytes, sizeClass, maxBytes));
+                }
+                allocatedBytes += sizeClass;
+            }
+        }
+
+        if (buffer != null) {
+            reused.increment();
+        } else {
+            buffer = ByteBuffer.allocateDirect(sizeClass).order(ByteOrder.nativeOrder());
+            allocated.increment();
+            log.debug("Allocato buffer off-heap di {} KB", sizeClass / 1024);
+        }
+        return new PathBuffer(this, buffer, (int) doubles);
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        int sizeClass = buffer.capacity();
+        if (idleBytes + sizeClass > maxIdleBytes) {
+            // Il pool è pieno: il buffer viene lasciato al GC, che libera la memoria nativa
+            allocatedBytes -= sizeClass;
+            return;
+        }
+        buffer.clear();
+        idle.computeIfAbsent(sizeClass, size -> new ArrayDeque<>()).addFirst(buffer);
+        idleBytes += sizeClass;
+    }
+
+    private void dropIdleBuffer() {
+        for (Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry : idle.entrySet()) {
+            if (entry.getValue().pollLast() != null) {
+                idleBytes -= entry.getKey();
+                allocatedBytes -= entry.getKey();
+                return;
+            }
+        }
+    }
+
+    private synchronized long[] snapshot() {
+        return new long[]{allocatedBytes, idleBytes};
+    }
+
+    private static long sizeClass(long bytes) {
+        long size = MIN_CLASS_BYTES;
+        while (size < bytes) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Vettore di double off-heap preso dal pool. Va chiuso esplicitamente (try-with-resources):
+     * dopo {@link #close()} il buffer può essere consegnato a un altro job.
+     */
+    public static final class PathBuffer implements AutoCloseable {
+
+        private final OffHeapBufferPool pool;
+        private final ByteBuffer bytes;
+        private final DoubleBuffer values;
+        private final int length;
+        private boolean closed;
+
+        private PathBuffer(OffHeapBufferPool pool, ByteBuffer bytes, int length) {
+            this.pool = pool;
+            this.bytes = bytes;
+            this.values = bytes.asDoubleBuffer();
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Byte occupati nel pool, cioè la classe di dimensione e non la lunghezza richiesta
+         */
+        public long capacityBytes() {
+            return bytes.capacity();
+        }
+
+        public double get(int index) {
+            return values.get(index);
+        }
+
+        public void put(int index, double value) {
+            values.put(index, value);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                pool.release(bytes);
+            }
+        }
+    }
+}
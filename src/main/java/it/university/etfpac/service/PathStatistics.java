@@ -0,0 +1,189 @@
+package it.university.etfpac.service;
+
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Statistiche aggregabili di un insieme di percorsi Monte Carlo.
+ *
+ * Per ogni mese la distribuzione dei valori è mantenuta in un t-digest, per il valore finale
+ * i momenti (media, varianza e covarianza con la variabile di controllo) con l'algoritmo di Welford.
+ * La memoria è O(mesi × compressione) indipendentemente dal numero di percorsi, e due istanze
+ * calcolate su thread o nodi diversi si combinano con {@link #merge(PathStatistics)}; tra nodi
+ * viaggiano nel formato binario di {@link #toBytes()}.
+ */
+public final class PathStatistics {
+
+    static final double COMPRESSION = 100;
+
+    private final TDigest[] monthly;
+
+    // Momenti per unità di campionamento (coppia antitetica o singolo percorso)
+    private long units;
+    private double meanValue;
+    private double meanControl;
+    private double m2Value;
+    private double m2Control;
+    private double coMoment;
+
+    private long paths;
+    private long losses;
+    private double investedSum;
+
+    public PathStatistics(int months) {
+        this.monthly = new TDigest[months + 1];
+        for (int month = 0; month <= months; month++) {
+            monthly[month] = TDigest.createMergingDigest(COMPRESSION);
+        }
+    }
+
+    private PathStatistics(TDigest[] monthly) {
+        this.monthly = monthly;
+    }
+
+    void addMonthValue(int month, double value) {
+        monthly[month].add(value);
+    }
+
+    void addPathOutcome(double finalValue, double totalInvested) {
+        paths++;
+        investedSum += totalInvested;
+        if (finalValue < totalInvested) {
+            losses++;
+        }
+    }
+
+    void addUnit(double value, double control) {
+        units++;
+        double deltaValue = value - meanValue;
+        double deltaControl = control - meanControl;
+        meanValue += deltaValue / units;
+        meanControl += deltaControl / units;
+        m2Value += deltaValue * (value - meanValue);
+        m2Control += deltaControl * (control - meanControl);
+        coMoment += deltaValue * (control - meanControl);
+    }
+
+    /**
+     * Combina le statistiche di un altro insieme di percorsi (formule di Chan per i momenti)
+     */
+    public void merge(PathStatistics other) {
+        if (other.monthly.length != monthly.length) {
+            throw new IllegalArgumentException("Orizzonti temporali diversi: impossibile combinare le statistiche");
+        }
+        for (int month = 0; month < monthly.length; month++) {
+            monthly[month].add(other.monthly[month]);
+        }
+
+        if (other.units > 0) {
+            long total = units + other.units;
+            double deltaValue = other.meanValue - meanValue;
+            double deltaControl = other.meanControl - meanControl;
+            double factor = (double) units * other.units / total;
+
+            m2Value += other.m2Value + deltaValue * deltaValue * factor;
+            m2Control += other.m2Control + deltaControl * deltaControl * factor;
+            coMoment += other.coMoment + deltaValue * deltaControl * factor;
+            meanValue += deltaValue * other.units / total;
+            meanControl += deltaControl * other.units / total;
+            units = total;
+        }
+
+        paths += other.paths;
+        losses += other.losses;
+        investedSum += other.investedSum;
+    }
+
+    public byte[] toBytes() {
+        int size = Integer.BYTES + 3 * Long.BYTES + 6 * Double.BYTES;
+        for (TDigest digest : monthly) {
+            size += Integer.BYTES + digest.smallByteSize();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(monthly.length);
+        buffer.putLong(units).putLong(paths).putLong(losses);
+        buffer.putDouble(meanValue).putDouble(meanControl).putDouble(m2Value)
+                .putDouble(m2Control).putDouble(coMoment).putDouble(investedSum);
+        for (TDigest digest : monthly) {
+            int start = buffer.position();
+            buffer.putInt(0);
+            digest.asSmallBytes(buffer);
+            buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+        }
+
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    public static PathStatistics fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        TDigest[] monthly = new TDigest[buffer.getInt()];
+
+        PathStatistics statistics = new PathStatistics(monthly);
+        statistics.units = buffer.getLong();
+        statistics.paths = buffer.getLong();
+        statistics.losses = buffer.getLong();
+        statistics.meanValue = buffer.getDouble();
+        statistics.meanControl = buffer.getDouble();
+        statistics.m2Value = buffer.getDouble();
+        statistics.m2Control = buffer.getDouble();
+        statistics.coMoment = buffer.getDouble();
+        statistics.investedSum = buffer.getDouble();
+
+        for (int month = 0; month < monthly.length; month++) {
+            int length = buffer.getInt();
+            ByteBuffer slice = buffer.slice(buffer.position(), length);
+            monthly[month] = MergingDigest.fromBytes(slice);
+            buffer.position(buffer.position() + length);
+        }
+        return statistics;
+    }
+
+    public int months() {
+        return monthly.length - 1;
+    }
+
+    public double quantile(int month, double q) {
+        return monthly[month].quantile(q);
+    }
+
+    public long units() {
+        return units;
+    }
+
+    public long paths() {
+        return paths;
+    }
+
+    public double meanValue() {
+        return meanValue;
+    }
+
+    public double meanControl() {
+        return meanControl;
+    }
+
+    public double varianceValue() {
+        return units > 1 ? m2Value / (units - 1) : 0.0;
+    }
+
+    public double varianceControl() {
+        return units > 1 ? m2Control / (units - 1) : 0.0;
+    }
+
+    public double covariance() {
+        return units > 1 ? coMoment / (units - 1) : 0.0;
+    }
+
+    public double lossProbability() {
+        return paths > 0 ? (double) losses / paths : 0.0;
+    }
+
+    public double meanInvested() {
+        return paths > 0 ? investedSum / paths : 0.0;
+    }
+}
@@ -0,0 +1,286 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.request.EfficientFrontierRequest;
+import it.university.etfpac.dto.response.EfficientFrontierResponse;
+import it.university.etfpac.dto.response.EfficientFrontierResponse.FrontierPoint;
+import it.university.etfpac.exception.BadRequestException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.univariate.BrentOptimizer;
+import org.apache.commons.math3.optim.univariate.SearchInterval;
+import org.apache.commons.math3.optim.univariate.UnivariateObjectiveFunction;
+import org.apache.commons.math3.optim.univariate.UnivariatePointValuePair;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Ottimizzatore media-varianza long-only sulla matrice di covarianza del motore di rischio.
+ *
+ * Ogni punto della frontiera risolve min ½·wᵀΣw − λ·μᵀw con Σw = 1 e 0 ≤ wi ≤ capi tramite
+ * gradiente proiettato accelerato; λ = 0 dà il portafoglio a varianza minima, il massimo Sharpe
+ * è cercato su λ con Brent. I punti della frontiera sono indipendenti e vengono risolti in parallelo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PortfolioOptimizer {
+
+    private static final int MAX_ITERATIONS = 5000;
+    private static final double TOLERANCE = 1e-10;
+    private static final double LAMBDA_RANGE = 1e4;
+
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
+
+    /**
+     * La versione del catalogo fa parte della chiave: un cambio di prezzi o metriche rende
+     * irraggiungibili i risultati precedenti senza bisogno di invalidazione esplicita. Il modello
+     * arriva dal chiamante, così chiave e calcolo si riferiscono sempre alla stessa versione.
+     */
+    @Cacheable(value = "optimizations", key = "#request.cacheKey() + '_' + #model.catalogVersion")
+    public EfficientFrontierResponse efficientFrontier(EfficientFrontierRequest request, CovarianceModel model) {
+        Problem problem = buildProblem(model, request);
+        double riskFree = (request.getRiskFreeRate() != null ? request.getRiskFreeRate() : 2.0) / 100.0;
+        int points = request.getPoints() != null ? request.getPoints() : 20;
+
+        log.info("Calcolo frontiera efficiente: {} ETF, {} punti", problem.ids.length, points);
+
+        double lambdaMax = problem.lambdaMax();
+        List<CompletableFuture<double[]>> futures = new ArrayList<>(points);
+        futures.add(CompletableFuture.completedFuture(problem.solve(0.0)));
+        for (int k = 1; k < points; k++) {
+            // Griglia geometrica: i rendimenti variano rapidamente per λ piccoli
+            double lambda = lambdaMax * Math.pow(LAMBDA_RANGE, (double) (k - points + 1) / (points - 1));
+            futures.add(CompletableFuture.supplyAsync(() -> problem.solve(lambda), computeExecutor));
+        }
+        CompletableFuture<double[]> maxSharpe = CompletableFuture.supplyAsync(
+                () -> problem.maxSharpe(riskFree, lambdaMax), computeExecutor);
+
+        double[] minVariance = futures.get(0).join();
+        List<FrontierPoint> frontier = new ArrayList<>(points);
+        double lastReturn = Double.NEGATIVE_INFINITY;
+        for (CompletableFuture<double[]> future : futures) {
+            FrontierPoint point = problem.toPoint(future.join(), riskFree);
+            // Punti coincidenti (vincoli attivi) vengono compattati
+            if (point.getExpectedReturn() - lastReturn > 1e-6) {
+                frontier.add(point);
+                lastReturn = point.getExpectedReturn();
+            }
+        }
+
+        FrontierPoint best = problem.toPoint(maxSharpe.join(), riskFree);
+        for (FrontierPoint point : frontier) {
+            if (point.getSharpeRatio() > best.getSharpeRatio()) {
+                best = point;
+            }
+        }
+
+        return EfficientFrontierResponse.builder()
+                .catalogVersion(Long.toHexString(model.getCatalogVersion()))
+                .universe(List.of(problem.ids))
+                .riskFreeRate(riskFree * 100)
+                .minVariance(problem.toPoint(minVariance, riskFree))
+                .maxSharpe(best)
+                .frontier(frontier)
+                .build();
+    }
+
+    private Problem buildProblem(CovarianceModel model, EfficientFrontierRequest request) {
+        List<String> universe;
+        if (request.getEtfIds() == null || request.getEtfIds().isEmpty()) {
+            universe = new ArrayList<>(model.size());
+            for (int i = 0; i < model.size(); i++) {
+                universe.add(model.idAt(i));
+            }
+        } else {
+            universe = new ArrayList<>(new TreeSet<>(request.getEtfIds()));
+        }
+        if (universe.size() < 2) {
+            throw new BadRequestException("Servono almeno 2 ETF per l'ottimizzazione");
+        }
+
+        int n = universe.size();
+        int[] index = new int[n];
+        double[] caps = new double[n];
+        double maxWeight = (request.getMaxWeight() != null ? request.getMaxWeight() : 100.0) / 100.0;
+        Map<String, Double> weightCaps = request.getWeightCaps() != null ? request.getWeightCaps() : Map.of();
+
+        for (int i = 0; i < n; i++) {
+            Integer position = model.indexOf(universe.get(i));
+            if (position == null) {
+                throw new BadRequestException("ETF non trovato: " + universe.get(i));
+            }
+            index[i] = position;
+            Double cap = weightCaps.get(universe.get(i));
+            caps[i] = cap != null ? Math.min(maxWeight, cap / 100.0) : maxWeight;
+        }
+        if (Arrays.stream(caps).sum() < 1.0 - 1e-9) {
+            throw new BadRequestException("I limiti di peso non permettono di allocare il 100% del portfolio");
+        }
+
+        double[][] covariance = new double[n][n];
+        double[] expectedReturn = new double[n];
+        for (int i = 0; i < n; i++) {
+            expectedReturn[i] = model.expectedReturn(index[i]);
+            for (int j = 0; j < n; j++) {
+                covariance[i][j] = model.covariance(index[i], index[j]);
+            }
+        }
+
+        return new Problem(universe.toArray(String[]::new), new Array2DRowRealMatrix(covariance, false),
+                expectedReturn, caps);
+    }
+
+    /**
+     * Problema quadratico su un universo fissato; immutabile e condivisibile tra thread.
+     */
+    private static final class Problem {
+
+        private final String[] ids;
+        private final RealMatrix covariance;
+        private final double[] expectedReturn;
+        private final double[] caps;
+        private final double lipschitz;
+
+        Problem(String[] ids, RealMatrix covariance, double[] expectedReturn, double[] caps) {
+            this.ids = ids;
+            this.covariance = covariance;
+            this.expectedReturn = expectedReturn;
+            this.caps = caps;
+            double largestEigenvalue = Arrays.stream(new EigenDecomposition(covariance).getRealEigenvalues())
+                    .max()
+                    .orElse(1.0);
+            this.lipschitz = Math.max(largestEigenvalue, 1e-12);
+        }
+
+        /**
+         * Oltre questo λ il termine di rendimento domina la varianza e la soluzione coincide
+         * con il portafoglio di massimo rendimento sotto i vincoli
+         */
+        double lambdaMax() {
+            double spread = Arrays.stream(expectedReturn).max().orElse(0) - Arrays.stream(expectedReturn).min().orElse(0);
+            return 10.0 * lipschitz / Math.max(spread, 1e-4);
+        }
+
+        double[] solve(double lambda) {
+            int n = ids.length;
+            double[] weights = project(caps.clone());
+            double[] momentum = weights.clone();
+            double t = 1.0;
+            double step = 1.0 / lipschitz;
+
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                double[] gradient = covariance.operate(momentum);
+                double[] candidate = new double[n];
+                for (int i = 0; i < n; i++) {
+                    candidate[i] = momentum[i] - step * (gradient[i] - lambda * expectedReturn[i]);
+                }
+                candidate = project(candidate);
+
+                double nextT = (1 + Math.sqrt(1 + 4 * t * t)) / 2;
+                double change = 0;
+                for (int i = 0; i < n; i++) {
+                    change = Math.max(change, Math.abs(candidate[i] - weights[i]));
+                    momentum[i] = candidate[i] + ((t - 1) / nextT) * (candidate[i] - weights[i]);
+                }
+                weights = candidate;
+                t = nextT;
+                if (change < TOLERANCE) {
+                    break;
+                }
+            }
+            return weights;
+        }
+
+        double[] maxSharpe(double riskFree, double lambdaMax) {
+            BrentOptimizer optimizer = new BrentOptimizer(1e-4, 1e-6);
+            UnivariatePointValuePair result = optimizer.optimize(
+                    new MaxEval(100),
+                    new UnivariateObjectiveFunction(logLambda -> sharpe(solve(Math.exp(logLambda)), riskFree)),
+                    GoalType.MAXIMIZE,
+                    new SearchInterval(Math.log(lambdaMax / LAMBDA_RANGE), Math.log(lambdaMax)));
+            return solve(Math.exp(result.getPoint()));
+        }
+
+        /**
+         * Proiezione euclidea sul simplesso con limiti superiori: wi = clip(vi − τ, 0, capi)
+         * con τ trovato per bisezione in modo che Σwi = 1
+         */
+        double[] project(double[] values) {
+            double low = Double.POSITIVE_INFINITY;
+            double high = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < values.length; i++) {
+                low = Math.min(low, values[i] - caps[i]);
+                high = Math.max(high, values[i]);
+            }
+
+            for (int iteration = 0; iteration < 100 && high - low > 1e-15; iteration++) {
+                double tau = (low + high) / 2;
+                double sum = 0;
+                for (int i = 0; i < values.length; i++) {
+                    sum += Math.min(caps[i], Math.max(0, values[i] - tau));
+                }
+                if (sum > 1.0) {
+                    low = tau;
+                } else {
+                    high = tau;
+                }
+            }
+
+            double tau = (low + high) / 2;
+            double[] projected = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                projected[i] = Math.min(caps[i], Math.max(0, values[i] - tau));
+            }
+            return projected;
+        }
+
+        double portfolioReturn(double[] weights) {
+            double result = 0;
+            for (int i = 0; i < weights.length; i++) {
+                result += weights[i] * expectedReturn[i];
+            }
+            return result;
+        }
+
+        double portfolioVolatility(double[] weights) {
+            double[] product = covariance.operate(weights);
+            double variance = 0;
+            for (int i = 0; i < weights.length; i++) {
+                variance += weights[i] * product[i];
+            }
+            return Math.sqrt(Math.max(variance, 0));
+        }
+
+        double sharpe(double[] weights, double riskFree) {
+            double volatility = portfolioVolatility(weights);
+            return volatility > 0 ? (portfolioReturn(weights) - riskFree) / volatility : 0.0;
+        }
+
+        FrontierPoint toPoint(double[] weights, double riskFree) {
+            Map<String, Double> allocation = new LinkedHashMap<>();
+            for (int i = 0; i < weights.length; i++) {
+                double percentage = Math.round(weights[i] * 10000) / 100.0;
+                if (percentage > 0) {
+                    allocation.put(ids[i], percentage);
+                }
+            }
+            return FrontierPoint.builder()
+                    .expectedReturn(portfolioReturn(weights))
+                    .volatility(portfolioVolatility(weights))
+                    .sharpeRatio(sharpe(weights, riskFree))
+                    .weights(allocation)
+                    .build();
+        }
+    }
+}
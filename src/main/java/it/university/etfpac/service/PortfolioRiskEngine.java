@@ -0,0 +1,51 @@
+package it.university.etfpac.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Motore di rischio di portfolio basato sulla matrice di covarianza degli ETF.
+ *
+ * La matrice viene ricostruita solo quando cambia la versione del catalogo ETF.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PortfolioRiskEngine {
+
+    private final ETFCatalog etfCatalog;
+
+    private final AtomicReference<CovarianceModel> model = new AtomicReference<>();
+
+    public CovarianceModel model() {
+        ETFCatalogSnapshot snapshot = etfCatalog.snapshot();
+        CovarianceModel current = model.get();
+        if (current != null && current.getCatalogVersion() == snapshot.getVersion()) {
+            return current;
+        }
+
+        CovarianceModel rebuilt = new CovarianceModel(snapshot);
+        model.set(rebuilt);
+        log.info("Matrice di covarianza ricostruita per {} ETF (catalogo {})", rebuilt.size(), snapshot.getVersionTag());
+        return rebuilt;
+    }
+
+    /**
+     * Metriche di rischio per un'allocazione espressa in percentuali per ID ETF
+     */
+    public PortfolioRiskMetrics evaluate(Map<String, ? extends Number> allocationPercentages) {
+        return model().evaluate(allocationPercentages);
+    }
+
+    /**
+     * Modello dei rendimenti mensili correlati per gli ETF indicati, con fattore di Cholesky in cache
+     */
+    public CorrelatedReturnModel returnModel(Collection<String> etfIds) {
+        return model().returnModel(etfIds);
+    }
+}
@@ -0,0 +1,16 @@
+package it.university.etfpac.service;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class PortfolioRiskMetrics {
+    // Valori annualizzati espressi come frazione (0.15 = 15%)
+    private double volatility;
+    private double variance;
+    private double beta;
+    private double expectedReturn;
+    // Media pesata delle volatilità dei singoli ETF divisa per la volatilità del portfolio
+    private double diversificationRatio;
+}
@@ -1,6 +1,10 @@
 package it.university.etfpac.service;
 
+import it.university.etfpac.dto.request.EfficientFrontierRequest;
 import it.university.etfpac.dto.request.PortfolioRequest;
+import it.university.etfpac.dto.response.CursorPage;
+import it.university.etfpac.dto.response.EfficientFrontierResponse;
+import it.university.etfpac.dto.response.EfficientFrontierResponse.FrontierPoint;
 import it.university.etfpac.dto.response.PortfolioResponse;
 import it.university.etfpac.entity.*;
 import it.university.etfpac.exception.BadRequestException;
@@ -8,8 +12,9 @@ import it.university.etfpac.exception.ResourceNotFoundException;
 import it.university.etfpac.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -28,6 +33,11 @@ public class PortfolioService {
     private final UserRepository userRepository;
     private final ETFRepository etfRepository;
     private final SimulationRepository simulationRepository;
+    private final ETFCatalog etfCatalog;
+    private final PortfolioRiskEngine riskEngine;
+    private final PortfolioOptimizer optimizer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserStatisticsService userStatisticsService;
 
     public PortfolioResponse createPortfolio(PortfolioRequest request) {
         log.info("Creazione nuovo portfolio: {}", request.getName());
@@ -55,25 +65,32 @@ public class PortfolioService {
                 .build();
 
         // Imposta allocazioni ETF
-        Map<ETF, BigDecimal> etfAllocations = new HashMap<>();
-        for (Map.Entry<String, BigDecimal> entry : request.getEtfAllocations().entrySet()) {
-            ETF etf = etfRepository.findById(entry.getKey())
-                    .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato: " + entry.getKey()));
-            etfAllocations.put(etf, entry.getValue());
-        }
-        portfolio.setEtfAllocations(etfAllocations);
+        portfolio.setEtfAllocations(resolveEtfAllocations(request.getEtfAllocations()));
 
         Portfolio savedPortfolio = portfolioRepository.save(portfolio);
+        publishChange(savedPortfolio, DomainChangeEvent.Change.CREATED);
         return convertToResponse(savedPortfolio);
     }
 
     @Transactional(readOnly = true)
+    @Cacheable(value = "portfolios", key = "#id")
     public PortfolioResponse getPortfolioById(Long id) {
         Portfolio portfolio = portfolioRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
         return convertToResponse(portfolio);
     }
 
+    /**
+     * Versione del portfolio per ETag e Last-Modified: le metriche di rischio dipendono anche dal catalogo
+     */
+    @Transactional(readOnly = true)
+    public ResourceVersion getPortfolioVersion(Long id) {
+        ETFCatalogSnapshot catalog = etfCatalog.snapshot();
+        return portfolioRepository.findUpdatedAtById(id)
+                .map(updatedAt -> ResourceVersion.of("p", id, updatedAt, catalog.getVersion(), catalog.getLastUpdate()))
+                .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
+    }
+
     @Transactional(readOnly = true)
     public List<PortfolioResponse> getUserPortfolios(Long userId, boolean includeTemplates) {
         User user = userRepository.findById(userId)
@@ -86,16 +103,27 @@ public class PortfolioService {
             portfolios = portfolioRepository.findByUserAndIsTemplateOrderByCreatedAtDesc(user, false);
         }
 
-        return portfolios.stream().map(this::convertToResponse).collect(Collectors.toList());
+        return convertToResponses(portfolios);
     }
 
+    /**
+     * Portfolio dell'utente con paginazione keyset: una riga in più dice se esiste la pagina successiva
+     */
     @Transactional(readOnly = true)
-    public Page<PortfolioResponse> getUserPortfoliosPaged(Long userId, Pageable pageable) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
+    public CursorPage<PortfolioResponse> getUserPortfoliosPage(Long userId, String cursor, int size) {
+        KeysetCursor.validateSize(size);
+        if (!userRepository.existsById(userId)) {
+            throw new ResourceNotFoundException("Utente non trovato");
+        }
 
-        return portfolioRepository.findByUserAndIsTemplate(user, false, pageable)
-                .map(this::convertToResponse);
+        List<Portfolio> portfolios;
+        if (cursor == null || cursor.isBlank()) {
+            portfolios = portfolioRepository.findLatestByUser(userId, KeysetCursor.limit(size));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            portfolios = portfolioRepository.findLatestByUserBefore(userId, after.createdAt(), after.id(), KeysetCursor.limit(size));
+        }
+        return KeysetCursor.page(portfolios, size, p -> new KeysetCursor(p.getCreatedAt(), p.getId()), this::convertToResponses);
     }
 
     public PortfolioResponse updatePortfolio(Long id, PortfolioRequest request) {
@@ -113,15 +141,14 @@ public class PortfolioService {
         portfolio.setInvestmentPeriodMonths(request.getInvestmentPeriodMonths());
 
         // Aggiorna le allocazioni degli ETF
-        Map<ETF, BigDecimal> newAllocations = new HashMap<>();
-        for (Map.Entry<String, BigDecimal> entry : request.getEtfAllocations().entrySet()) {
-            ETF etf = etfRepository.findById(entry.getKey())
-                    .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato: " + entry.getKey()));
-            newAllocations.put(etf, entry.getValue());
+        if (allocationsChanged(portfolio.getEtfAllocations(), request.getEtfAllocations())) {
+            // Sostituire solo la collezione non rende dirty la riga del portfolio: senza questo
+            // updated_at resterebbe invariato e ETag e Last-Modified servirebbero un 304 su dati vecchi
+            portfolio.setUpdatedAt(LocalDateTime.now());
         }
-        portfolio.setEtfAllocations(newAllocations);
+        portfolio.setEtfAllocations(resolveEtfAllocations(request.getEtfAllocations()));
 
-        return convertToResponse(portfolioRepository.save(portfolio));
+        return saveAndPublish(portfolio, DomainChangeEvent.Change.UPDATED);
     }
 
     public Map<String, Object> validateEtfAllocation(Map<String, Double> etfAllocation) {
@@ -138,7 +165,7 @@ public class PortfolioService {
         }
 
         for (String etfId : etfAllocation.keySet()) {
-            if (!etfRepository.existsById(etfId)) {
+            if (!etfCatalog.contains(etfId)) {
                 errors.add("ETF non trovato: " + etfId);
             }
         }
@@ -152,13 +179,31 @@ public class PortfolioService {
         return validation;
     }
 
+    @Transactional(readOnly = true)
+    public EfficientFrontierResponse calculateEfficientFrontier(EfficientFrontierRequest request) {
+        return optimizer.efficientFrontier(request, riskEngine.model());
+    }
+
+    @Transactional(readOnly = true)
     public Map<String, Object> optimizePortfolio(Map<String, Object> request) {
-        String riskProfile = (String) request.get("risk_profile");
-        Map<String, Double> suggestedAllocation = generateOptimalAllocation(riskProfile);
+        String riskProfile = request.get("risk_profile") != null ? (String) request.get("risk_profile") : "MODERATO";
+
+        EfficientFrontierRequest frontierRequest = new EfficientFrontierRequest();
+        if (request.get("max_weight") instanceof Number maxWeight) {
+            frontierRequest.setMaxWeight(maxWeight.doubleValue());
+        } else {
+            // Senza indicazioni si limita la concentrazione su un singolo ETF
+            frontierRequest.setMaxWeight(40.0);
+        }
+        EfficientFrontierResponse frontier = calculateEfficientFrontier(frontierRequest);
+        FrontierPoint selected = selectFrontierPoint(frontier, riskProfile);
 
         Map<String, Object> optimization = new HashMap<>();
-        optimization.put("suggested_allocation", suggestedAllocation);
+        optimization.put("suggested_allocation", selected.getWeights());
         optimization.put("risk_profile", riskProfile);
+        optimization.put("expected_return", selected.getExpectedReturn());
+        optimization.put("expected_volatility", selected.getVolatility());
+        optimization.put("sharpe_ratio", selected.getSharpeRatio());
         optimization.put("optimization_timestamp", LocalDateTime.now());
 
         return optimization;
@@ -169,12 +214,13 @@ public class PortfolioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
 
         Map<String, Object> riskAnalysis = new HashMap<>();
-        double volatility = calculateVolatility(portfolio);
-        double beta = calculateBeta(portfolio);
+        PortfolioRiskMetrics risk = calculateRiskMetrics(portfolio);
 
-        riskAnalysis.put("portfolio_volatility", volatility);
-        riskAnalysis.put("portfolio_beta", beta);
-        riskAnalysis.put("risk_level", determineRiskLevel(volatility, beta));
+        riskAnalysis.put("portfolio_volatility", risk.getVolatility());
+        riskAnalysis.put("portfolio_beta", risk.getBeta());
+        riskAnalysis.put("expected_return", risk.getExpectedReturn());
+        riskAnalysis.put("diversification_ratio", risk.getDiversificationRatio());
+        riskAnalysis.put("risk_level", determineRiskLevel(risk.getVolatility(), risk.getBeta()));
         riskAnalysis.put("diversification_score", calculateDiversificationScore(portfolio));
 
         return riskAnalysis;
@@ -187,11 +233,15 @@ public class PortfolioService {
         comparison.put("portfolios", portfolios.stream().map(this::convertToResponse).collect(Collectors.toList()));
         comparison.put("risk_comparison", portfolios.stream().collect(Collectors.toMap(
                 p -> "portfolio_" + p.getId(),
-                p -> Map.of(
-                        "volatility", calculateVolatility(p),
-                        "beta", calculateBeta(p),
-                        "diversification", calculateDiversificationScore(p)
-                )
+                p -> {
+                    PortfolioRiskMetrics risk = calculateRiskMetrics(p);
+                    return Map.of(
+                            "volatility", risk.getVolatility(),
+                            "beta", risk.getBeta(),
+                            "diversification", calculateDiversificationScore(p),
+                            "diversification_ratio", risk.getDiversificationRatio()
+                    );
+                }
         )));
 
         return comparison;
@@ -205,7 +255,7 @@ public class PortfolioService {
                 newName != null ? newName : original.getName() + " - Copia");
         clone.setIsTemplate(false);
 
-        return convertToResponse(portfolioRepository.save(clone));
+        return saveAndPublish(clone, DomainChangeEvent.Change.CREATED);
     }
 
     public PortfolioResponse activatePortfolio(Long id) {
@@ -217,7 +267,7 @@ public class PortfolioService {
         }
 
         portfolio.activate();
-        return convertToResponse(portfolioRepository.save(portfolio));
+        return saveAndPublish(portfolio, DomainChangeEvent.Change.UPDATED);
     }
 
     public PortfolioResponse pausePortfolio(Long id) {
@@ -225,7 +275,7 @@ public class PortfolioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
 
         portfolio.pause();
-        return convertToResponse(portfolioRepository.save(portfolio));
+        return saveAndPublish(portfolio, DomainChangeEvent.Change.UPDATED);
     }
 
     public PortfolioResponse completePortfolio(Long id) {
@@ -233,10 +283,11 @@ public class PortfolioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
 
         portfolio.complete();
-        return convertToResponse(portfolioRepository.save(portfolio));
+        return saveAndPublish(portfolio, DomainChangeEvent.Change.UPDATED);
     }
 
     @Transactional(readOnly = true)
+    @Cacheable(value = "templates", key = "#riskProfile != null ? #riskProfile.toUpperCase() : 'ALL'")
     public List<PortfolioResponse> getPortfolioTemplates(String riskProfile) {
         List<Portfolio> templates;
         if (riskProfile != null) {
@@ -246,7 +297,7 @@ public class PortfolioService {
             templates = portfolioRepository.findByIsTemplateOrderByCreatedAtDesc(true);
         }
 
-        return templates.stream().map(this::convertToResponse).collect(Collectors.toList());
+        return convertToResponses(templates);
     }
 
     public PortfolioResponse saveAsTemplate(Long id, String templateName) {
@@ -254,15 +305,33 @@ public class PortfolioService {
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
 
         Portfolio template = portfolio.cloneAsTemplate(templateName);
-        return convertToResponse(portfolioRepository.save(template));
+        return saveAndPublish(template, DomainChangeEvent.Change.CREATED);
+    }
+
+    private PortfolioResponse saveAndPublish(Portfolio portfolio, DomainChangeEvent.Change change) {
+        Portfolio saved = portfolioRepository.save(portfolio);
+        publishChange(saved, change);
+        return convertToResponse(saved);
+    }
+
+    /**
+     * I template hanno un tipo di evento proprio: invalidano anche gli elenchi per profilo di rischio
+     */
+    private void publishChange(Portfolio portfolio, DomainChangeEvent.Change change) {
+        DomainChangeEvent.Entity entity = Boolean.TRUE.equals(portfolio.getIsTemplate())
+                ? DomainChangeEvent.Entity.TEMPLATE
+                : DomainChangeEvent.Entity.PORTFOLIO;
+        eventPublisher.publishEvent(new DomainChangeEvent(entity, change, String.valueOf(portfolio.getId()),
+                portfolio.getUser().getId()));
     }
 
     public Map<String, Object> simulatePerformance(Long portfolioId, int months) {
         Portfolio portfolio = portfolioRepository.findById(portfolioId)
                 .orElseThrow(() -> new ResourceNotFoundException("Portfolio non trovato"));
 
-        double expectedReturn = calculateExpectedReturn(portfolio);
-        double volatility = calculateVolatility(portfolio);
+        PortfolioRiskMetrics risk = calculateRiskMetrics(portfolio);
+        double expectedReturn = risk.getExpectedReturn();
+        double volatility = risk.getVolatility();
 
         List<Map<String, Object>> monthlyData = new ArrayList<>();
         double portfolioValue = portfolio.getInitialAmount().doubleValue();
@@ -347,27 +416,19 @@ public class PortfolioService {
         return exportData;
     }
 
+    /**
+     * Lettura della riga materializzata in user_statistics, senza caricare i portfolio dell'utente
+     */
+    @Transactional(readOnly = true)
     public Map<String, Object> getUserPortfolioStatistics(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
-
-        List<Portfolio> portfolios = portfolioRepository.findByUserAndIsTemplate(user, false);
-
-        Map<String, Object> statistics = new HashMap<>();
-        statistics.put("total_portfolios", portfolios.size());
-        statistics.put("active_portfolios", portfolios.stream().mapToLong(p -> p.getActive() ? 1 : 0).sum());
-        statistics.put("total_initial_investment", portfolios.stream()
-                .map(Portfolio::getInitialAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add));
-
-        return statistics;
+        return userStatisticsService.getStatistics(userId);
     }
 
     public List<PortfolioResponse> getPortfoliosByStrategy(String strategy) {
         Portfolio.InvestmentStrategy investmentStrategy = Portfolio.InvestmentStrategy.valueOf(strategy.toUpperCase());
         List<Portfolio> portfolios = portfolioRepository.findByStrategyAndIsTemplate(investmentStrategy, false);
 
-        return portfolios.stream().map(this::convertToResponse).collect(Collectors.toList());
+        return convertToResponses(portfolios);
     }
 
     public Map<String, Object> checkUserCompatibility(Long portfolioId, Long userId) {
@@ -377,7 +438,7 @@ public class PortfolioService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
 
-        double portfolioRisk = calculateVolatility(portfolio);
+        double portfolioRisk = calculateRiskMetrics(portfolio).getVolatility();
         boolean riskCompatible = isRiskCompatible(portfolioRisk, user.getRiskProfile().name());
 
         Map<String, Object> compatibility = new HashMap<>();
@@ -398,70 +459,76 @@ public class PortfolioService {
         }
     }
 
-    private Map<String, Double> generateOptimalAllocation(String riskProfile) {
-        Map<String, Double> allocation = new HashMap<>();
-
-        switch (riskProfile.toUpperCase()) {
-            case "CONSERVATIVO":
-                allocation.put("bonds", 50.0);
-                allocation.put("world_equity", 30.0);
-                allocation.put("real_estate", 20.0);
-                break;
-            case "MODERATO":
-                allocation.put("world_equity", 60.0);
-                allocation.put("bonds", 25.0);
-                allocation.put("emerging", 15.0);
-                break;
-            case "AGGRESSIVO":
-                allocation.put("world_equity", 50.0);
-                allocation.put("emerging", 30.0);
-                allocation.put("sp500", 20.0);
-                break;
-            default:
-                allocation.put("world_equity", 60.0);
-                allocation.put("bonds", 40.0);
+    /**
+     * Converte le allocazioni per ID in allocazioni per entità ETF: validazione sul catalogo
+     * in memoria e un'unica query per caricare le entità gestite
+     */
+    /**
+     * Confronto per id ETF e valore numerico: 60 e 60.00 sono la stessa allocazione
+     */
+    private static boolean allocationsChanged(Map<ETF, BigDecimal> current, Map<String, BigDecimal> requested) {
+        if (current == null || current.size() != requested.size()) {
+            return true;
         }
-
-        return allocation;
+        for (Map.Entry<ETF, BigDecimal> entry : current.entrySet()) {
+            BigDecimal value = requested.get(entry.getKey().getId());
+            if (value == null || value.compareTo(entry.getValue()) != 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private double calculateVolatility(Portfolio portfolio) {
-        return portfolio.getEtfAllocations().entrySet().stream()
-                .mapToDouble(entry -> {
-                    double weight = entry.getValue().doubleValue() / 100.0;
-                    double volatility = getETFVolatility(entry.getKey());
-                    return weight * volatility;
-                })
-                .sum() * 0.85; // Diversification benefit
-    }
+    private Map<ETF, BigDecimal> resolveEtfAllocations(Map<String, BigDecimal> allocations) {
+        for (String etfId : allocations.keySet()) {
+            if (!etfCatalog.contains(etfId)) {
+                throw new ResourceNotFoundException("ETF non trovato: " + etfId);
+            }
+        }
 
-    private double calculateBeta(Portfolio portfolio) {
-        return portfolio.getEtfAllocations().entrySet().stream()
-                .mapToDouble(entry -> {
-                    double weight = entry.getValue().doubleValue() / 100.0;
-                    double beta = entry.getKey().getBeta() != null ? entry.getKey().getBeta() : 1.0;
-                    return weight * beta;
-                })
-                .sum();
-    }
+        Map<String, ETF> etfs = etfRepository.findAllById(allocations.keySet()).stream()
+                .collect(Collectors.toMap(ETF::getId, etf -> etf));
 
-    private double calculateExpectedReturn(Portfolio portfolio) {
-        return portfolio.getEtfAllocations().entrySet().stream()
-                .mapToDouble(entry -> {
-                    double weight = entry.getValue().doubleValue() / 100.0;
-                    double returnRate = entry.getKey().getFiveYear() != null ? entry.getKey().getFiveYear() / 100.0 : 0.08;
-                    return weight * returnRate;
-                })
-                .sum();
+        Map<ETF, BigDecimal> etfAllocations = new HashMap<>();
+        for (Map.Entry<String, BigDecimal> entry : allocations.entrySet()) {
+            ETF etf = etfs.get(entry.getKey());
+            if (etf == null) {
+                throw new ResourceNotFoundException("ETF non trovato: " + entry.getKey());
+            }
+            etfAllocations.put(etf, entry.getValue());
+        }
+        return etfAllocations;
+    }
+
+    /**
+     * Profilo conservativo: varianza minima; moderato: massimo Sharpe; aggressivo: punto della
+     * frontiera a metà strada tra il massimo Sharpe e il massimo rendimento
+     */
+    private FrontierPoint selectFrontierPoint(EfficientFrontierResponse frontier, String riskProfile) {
+        return switch (riskProfile.toUpperCase()) {
+            case "CONSERVATIVO" -> frontier.getMinVariance();
+            case "AGGRESSIVO" -> {
+                List<FrontierPoint> points = frontier.getFrontier();
+                double target = (frontier.getMaxSharpe().getExpectedReturn()
+                        + points.get(points.size() - 1).getExpectedReturn()) / 2;
+                yield points.stream()
+                        .filter(point -> point.getExpectedReturn() >= target)
+                        .findFirst()
+                        .orElse(points.get(points.size() - 1));
+            }
+            default -> frontier.getMaxSharpe();
+        };
     }
 
-    private double getETFVolatility(ETF etf) {
-        return switch (etf.getRisk()) {
-            case LOW -> 0.08;
-            case MEDIUM -> 0.15;
-            case HIGH -> 0.20;
-            case VERY_HIGH -> 0.25;
-        };
+    /**
+     * Volatilità (wᵀΣw), beta e rendimento atteso del portfolio in un solo passaggio
+     */
+    private PortfolioRiskMetrics calculateRiskMetrics(Portfolio portfolio) {
+        Map<String, BigDecimal> allocations = new HashMap<>();
+        for (Map.Entry<ETF, BigDecimal> entry : portfolio.getEtfAllocations().entrySet()) {
+            allocations.put(entry.getKey().getId(), entry.getValue());
+        }
+        return riskEngine.evaluate(allocations);
     }
 
     private String determineRiskLevel(double volatility, double beta) {
@@ -505,15 +572,52 @@ public class PortfolioService {
     }
 
     private PortfolioResponse convertToResponse(Portfolio portfolio) {
-        Map<String, BigDecimal> etfAllocations = portfolio.getEtfAllocations().entrySet().stream()
-                .collect(Collectors.toMap(
-                        entry -> entry.getKey().getId(),
-                        Map.Entry::getValue
-                ));
+        Map<String, BigDecimal> allocations = new LinkedHashMap<>();
+        Map<String, ETF> etfs = new HashMap<>();
+        for (Map.Entry<ETF, BigDecimal> entry : portfolio.getEtfAllocations().entrySet()) {
+            allocations.put(entry.getKey().getId(), entry.getValue());
+            etfs.put(entry.getKey().getId(), entry.getKey());
+        }
+        return convertToResponse(portfolio, allocations, etfs);
+    }
+
+    /**
+     * Percorso di lettura degli elenchi: utente caricato dalla query di elenco, allocazioni di tutti
+     * i portfolio con una sola query di proiezione e dettagli ETF dal catalogo in memoria, senza
+     * inizializzare la collezione etfAllocations di ogni portfolio
+     */
+    private List<PortfolioResponse> convertToResponses(List<Portfolio> portfolios) {
+        if (portfolios.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Map<String, BigDecimal>> allocationsByPortfolio = new HashMap<>();
+        List<Long> ids = portfolios.stream().map(Portfolio::getId).collect(Collectors.toList());
+        for (PortfolioRepository.AllocationRow row : portfolioRepository.findAllocationsByPortfolioIds(ids)) {
+            allocationsByPortfolio.computeIfAbsent(row.getPortfolioId(), id -> new LinkedHashMap<>())
+                    .put(row.getEtfId(), row.getPercentage());
+        }
+
+        ETFCatalogSnapshot catalog = etfCatalog.snapshot();
+        return portfolios.stream()
+                .map(portfolio -> {
+                    Map<String, BigDecimal> allocations = allocationsByPortfolio.getOrDefault(portfolio.getId(), Map.of());
+                    return convertToResponse(portfolio, allocations, catalog.findAll(allocations.keySet()));
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Le metriche di rischio sono calcolate una sola volta per portfolio a partire dalla mappa delle allocazioni
+     */
+    private PortfolioResponse convertToResponse(Portfolio portfolio, Map<String, BigDecimal> allocations, Map<String, ETF> etfs) {
+        PortfolioRiskMetrics risk = riskEngine.evaluate(allocations);
+        BigDecimal totalAllocation = allocations.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        List<PortfolioResponse.ETFAllocationDetail> etfDetails = portfolio.getEtfAllocations().entrySet().stream()
+        List<PortfolioResponse.ETFAllocationDetail> etfDetails = allocations.entrySet().stream()
+                .filter(entry -> etfs.containsKey(entry.getKey()))
                 .map(entry -> {
-                    ETF etf = entry.getKey();
+                    ETF etf = etfs.get(entry.getKey());
                     return PortfolioResponse.ETFAllocationDetail.builder()
                             .etfId(etf.getId())
                             .etfName(etf.getName())
@@ -542,7 +646,7 @@ public class PortfolioService {
                 .automaticRebalance(portfolio.getAutomaticRebalance())
                 .stopLossPercentage(portfolio.getStopLossPercentage())
                 .takeProfitPercentage(portfolio.getTakeProfitPercentage())
-                .etfAllocations(etfAllocations)
+                .etfAllocations(new HashMap<>(allocations))
                 .etfAllocationDetails(etfDetails)
                 .active(portfolio.getActive())
                 .isTemplate(portfolio.getIsTemplate())
@@ -550,13 +654,13 @@ public class PortfolioService {
                 .createdAt(portfolio.getCreatedAt())
                 .updatedAt(portfolio.getUpdatedAt())
                 .lastSimulatedAt(portfolio.getLastSimulatedAt())
-                .totalAllocationPercentage(portfolio.getTotalAllocationPercentage())
-                .allocationValid(portfolio.isAllocationValid())
+                .totalAllocationPercentage(totalAllocation)
+                .allocationValid(totalAllocation.compareTo(new BigDecimal("100.00")) == 0)
                 .estimatedTotalInvestment(portfolio.getEstimatedTotalInvestment())
                 .editable(portfolio.isEditable())
-                .expectedReturn(BigDecimal.valueOf(calculateExpectedReturn(portfolio)))
-                .expectedVolatility(BigDecimal.valueOf(calculateVolatility(portfolio)))
-                .riskLevel(determineRiskLevel(calculateVolatility(portfolio), calculateBeta(portfolio)))
+                .expectedReturn(BigDecimal.valueOf(risk.getExpectedReturn()))
+                .expectedVolatility(BigDecimal.valueOf(risk.getVolatility()))
+                .riskLevel(determineRiskLevel(risk.getVolatility(), risk.getBeta()))
                 .build();
     }
 
@@ -0,0 +1,51 @@
+package it.university.etfpac.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Versione di una risorsa per le richieste condizionali: ETag forte e Last-Modified.
+ *
+ * Si ricava da poche colonne (timestamp di modifica, versione del catalogo) senza caricare
+ * l'oggetto completo, così un 304 non costa la costruzione della risposta.
+ */
+public record ResourceVersion(String etag, Instant lastModified) {
+
+    public static ResourceVersion of(String prefix, Object id, LocalDateTime modifiedAt) {
+        Instant instant = toInstant(modifiedAt);
+        return new ResourceVersion(quote(prefix + "-" + id + "-" + Long.toHexString(micros(instant))), instant);
+    }
+
+    /**
+     * Per le risposte che includono dati del catalogo ETF: cambia anche quando cambia il catalogo
+     */
+    public static ResourceVersion of(String prefix, Object id, LocalDateTime modifiedAt,
+                                     long catalogVersion, LocalDateTime catalogUpdatedAt) {
+        Instant instant = toInstant(modifiedAt);
+        Instant catalogInstant = toInstant(catalogUpdatedAt);
+        return new ResourceVersion(
+                quote(prefix + "-" + id + "-" + Long.toHexString(micros(instant)) + "-" + Long.toHexString(catalogVersion)),
+                catalogInstant.isAfter(instant) ? catalogInstant : instant);
+    }
+
+    public static ResourceVersion ofCatalog(String prefix, String versionTag, LocalDateTime catalogUpdatedAt) {
+        return new ResourceVersion(quote(prefix + "-" + versionTag), toInstant(catalogUpdatedAt));
+    }
+
+    public long lastModifiedMillis() {
+        return lastModified.toEpochMilli();
+    }
+
+    private static Instant toInstant(LocalDateTime value) {
+        return value != null ? value.atZone(ZoneId.systemDefault()).toInstant() : Instant.EPOCH;
+    }
+
+    private static long micros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+}
@@ -0,0 +1,107 @@
+package it.university.etfpac.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Cache dei percorsi di rendimento mensili per simulazioni con seed esplicito.
+ *
+ * Il percorso dipende solo da allocazione, seed e versione del catalogo: se cambiano importi o
+ * strategia viene riusato così com'è e si ricalcola solo l'accumulo dei versamenti; se cambia
+ * l'orizzonte il prefisso già generato resta valido e si generano solo i mesi mancanti, perché ogni
+ * mese ha un generatore derivato da (seed, mese).
+ */
+@Component
+@RequiredArgsConstructor
+public class ReturnPathCache {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private final PortfolioRiskEngine riskEngine;
+
+    private final Map<Key, ReturnPath> paths = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ReturnPath> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public ReturnPath.Prefix get(Map<String, Double> allocation, long seed, int months) {
+        SortedMap<String, Double> weights = new TreeMap<>();
+        allocation.forEach((etfId, percentage) -> {
+            if (percentage != null && percentage > 0) {
+                weights.put(etfId, percentage);
+            }
+        });
+
+        CovarianceModel model = riskEngine.model();
+        Key key = new Key(weights, seed, model.getCatalogVersion());
+
+        ReturnPath path;
+        synchronized (paths) {
+            path = paths.computeIfAbsent(key, k -> new ReturnPath(model.returnModel(weights.keySet()), weights, seed));
+        }
+        return path.ensure(months);
+    }
+
+    public int size() {
+        synchronized (paths) {
+            return paths.size();
+        }
+    }
+
+    private record Key(SortedMap<String, Double> weights, long seed, long catalogVersion) {
+    }
+
+    /**
+     * Rendimenti mensili del portafoglio generati on demand; i mesi già generati non cambiano mai
+     */
+    public static final class ReturnPath {
+
+        private final long seed;
+        private final CorrelatedReturnModel model;
+        private final double[] weights;
+
+        private double[] returns = new double[0];
+        private double[] noise = new double[0];
+        private int generated;
+
+        ReturnPath(CorrelatedReturnModel model, SortedMap<String, Double> allocation, long seed) {
+            this.seed = seed;
+            this.model = model;
+            this.weights = model.weights(allocation);
+        }
+
+        synchronized Prefix ensure(int months) {
+            if (months > generated) {
+                if (months >= returns.length) {
+                    int capacity = Math.max(months + 1, returns.length * 2);
+                    returns = Arrays.copyOf(returns, capacity);
+                    noise = Arrays.copyOf(noise, capacity);
+                }
+                for (int month = generated + 1; month <= months; month++) {
+                    generateMonth(month);
+                }
+                generated = months;
+            }
+            return new Prefix(returns, noise, months);
+        }
+
+        /**
+         * Stesso modello correlato del motore a singolo percorso, con estrazioni riproducibili
+         */
+        private void generateMonth(int month) {
+            SplittableRandom random = new SplittableRandom(seed ^ (0xBF58476D1CE4E5B9L * month));
+            model.generatePortfolio(random, weights, 1, returns, month);
+            noise[month] = random.nextDouble();
+        }
+
+        /**
+         * Vista immutabile dei primi {@code months} mesi (indice 1..months)
+         */
+        public record Prefix(double[] returns, double[] noise, int months) {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.request.ScenarioComparisonRequest;
+import it.university.etfpac.dto.response.ScenarioComparisonResponse;
+import it.university.etfpac.entity.Simulation;
+import it.university.etfpac.monitoring.SimulationMetrics;
+import it.university.etfpac.monitoring.SimulationPhaseEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Confronto di più portafogli sugli stessi scenari di mercato.
+ *
+ * Gli scenari vengono da {@link ScenarioPathCache}: il costo è una generazione (o nessuna, se già in
+ * cache) più un passaggio matrice-vettore per portafoglio, e le differenze tra portafogli non sono
+ * sporcate dal rumore di estrazioni indipendenti.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScenarioComparisonEngine {
+
+    private final ScenarioPathCache scenarioPathCache;
+    private final SimulationMetrics metrics;
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
+
+    public ScenarioComparisonResponse compare(ScenarioComparisonRequest request) {
+        Simulation.Strategy strategy = Simulation.Strategy.valueOf(request.getStrategy().toUpperCase());
+        List<ScenarioComparisonRequest.PortfolioScenario> portfolios = request.getPortfolios();
+        int months = request.getInvestmentPeriod();
+        int scenarios = request.getScenarios();
+        long seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+
+        Set<String> universe = new TreeSet<>();
+        portfolios.forEach(portfolio -> universe.addAll(portfolio.getEtfAllocation().keySet()));
+
+        double[][][] outcomes;
+        SimulationPhaseEvent generation = SimulationPhaseEvent.start("compareScenarios", "scenario-paths");
+        try (ScenarioPathCache.ScenarioPaths paths = scenarioPathCache.acquire(universe, seed, months, scenarios)) {
+            generation.months(months).etfCount(universe.size()).finish();
+
+            SimulationPhaseEvent pricing = SimulationPhaseEvent.start("compareScenarios", "pricing");
+            outcomes = metrics.recordEngineRun(strategy.name(), months, scenarios * portfolios.size(),
+                    () -> priceAll(paths, portfolios, strategy, request.getInitialAmount(), request.getMonthlyAmount()));
+            pricing.months(months).etfCount(universe.size()).finish();
+        }
+
+        double[] baseline = outcomes[0][0];
+        List<ScenarioComparisonResponse.PortfolioOutcome> results = new ArrayList<>(portfolios.size());
+        for (int p = 0; p < portfolios.size(); p++) {
+            results.add(summarize(portfolios.get(p).getName(), outcomes[p][0], outcomes[p][1], baseline));
+        }
+
+        log.info("Confronto su scenari comuni: {} portafogli, {} scenari, {} mesi, {} ETF",
+                portfolios.size(), scenarios, months, universe.size());
+
+        return ScenarioComparisonResponse.builder()
+                .seed(seed)
+                .scenarios(scenarios)
+                .months(months)
+                .universeSize(universe.size())
+                .strategy(strategy.name())
+                .portfolios(results)
+                .build();
+    }
+
+    /**
+     * Valuta i portafogli in parallelo; per ognuno restituisce valori finali e capitale investito per scenario
+     */
+    private double[][][] priceAll(ScenarioPathCache.ScenarioPaths paths,
+                                  List<ScenarioComparisonRequest.PortfolioScenario> portfolios,
+                                  Simulation.Strategy strategy, double initialAmount, double monthlyAmount) {
+        double[][][] outcomes = new double[portfolios.size()][][];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(portfolios.size());
+        for (int p = 0; p < portfolios.size(); p++) {
+            final int index = p;
+            double[] weights = paths.weights(portfolios.get(p).getEtfAllocation());
+            futures.add(CompletableFuture.runAsync(
+                    () -> outcomes[index] = price(paths, weights, strategy, initialAmount, monthlyAmount),
+                    computeExecutor));
+        }
+        futures.forEach(CompletableFuture::join);
+        return outcomes;
+    }
+
+    private static double[][] price(ScenarioPathCache.ScenarioPaths paths, double[] weights,
+                                    Simulation.Strategy strategy, double initialAmount, double monthlyAmount) {
+        int scenarios = paths.scenarios();
+        double[] finalValues = new double[scenarios];
+        double[] invested = new double[scenarios];
+
+        for (int s = 0; s < scenarios; s++) {
+            double value = initialAmount;
+            double totalInvested = initialAmount;
+            for (int month = 1; month <= paths.months(); month++) {
+                double monthlyReturn = paths.portfolioReturn(s, month, weights);
+                value *= 1 + monthlyReturn;
+                double contribution = SimulationEngine.monthlyContribution(strategy, monthlyAmount, month,
+                        monthlyReturn, value, totalInvested, paths.noise(s, month));
+                value += contribution;
+                totalInvested += contribution;
+            }
+            finalValues[s] = value;
+            invested[s] = totalInvested;
+        }
+        return new double[][]{finalValues, invested};
+    }
+
+    private static ScenarioComparisonResponse.PortfolioOutcome summarize(String name, double[] finalValues,
+                                                                        double[] invested, double[] baseline) {
+        int scenarios = finalValues.length;
+        double valueSum = 0;
+        double investedSum = 0;
+        int losses = 0;
+        int wins = 0;
+        for (int s = 0; s < scenarios; s++) {
+            valueSum += finalValues[s];
+            investedSum += invested[s];
+            if (finalValues[s] < invested[s]) {
+                losses++;
+            }
+            if (finalValues[s] > baseline[s]) {
+                wins++;
+            }
+        }
+
+        double[] sorted = finalValues.clone();
+        Arrays.sort(sorted);
+
+        return ScenarioComparisonResponse.PortfolioOutcome.builder()
+                .name(name)
+                .meanFinalValue(valueSum / scenarios)
+                .p5FinalValue(quantile(sorted, 0.05))
+                .medianFinalValue(quantile(sorted, 0.50))
+                .p95FinalValue(quantile(sorted, 0.95))
+                .meanTotalInvested(investedSum / scenarios)
+                .probabilityOfLoss((double) losses / scenarios)
+                .probabilityBeatsFirst((double) wins / scenarios)
+                .build();
+    }
+
+    private static double quantile(double[] sorted, double q) {
+        double position = q * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (sorted[upper] - sorted[lower]) * (position - lower);
+    }
+}
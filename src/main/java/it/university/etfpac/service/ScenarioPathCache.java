@@ -0,0 +1,273 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.exception.BadRequestException;
+import it.university.etfpac.exception.ServiceUnavailableException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Cache degli scenari di mercato condivisi tra portafogli.
+ *
+ * Dato un universo di ETF e un seed, i rendimenti simulati non dipendono né dall'allocazione né dal
+ * piano di versamenti: la matrice scenari × mesi × ETF viene generata una volta per
+ * (universo, seed, orizzonte, numero di scenari, versione del catalogo, versione del modello) e
+ * qualsiasi numero di portafogli viene valutato sugli stessi percorsi con un prodotto matrice-vettore
+ * per mese. I rendimenti sono correlati tramite il fattore di Cholesky di {@link CorrelatedReturnModel}.
+ * La cache è un LRU limitato dai byte effettivamente occupati nel pool (classi di dimensione
+ * arrotondate), mai oltre {@code offheap.max-bytes}; le matrici vivono off-heap in buffer di
+ * {@link OffHeapBufferPool}, restituiti al pool quando l'ultima richiesta che le usa le chiude dopo
+ * l'espulsione dalla cache. Se il pool è pieno si espellono le matrici meno recenti e si riprova.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScenarioPathCache {
+
+    // Da incrementare quando cambia il modello di generazione: invalida le matrici esistenti
+    static final int MODEL_VERSION = 2;
+
+    private final PortfolioRiskEngine riskEngine;
+    private final OffHeapBufferPool bufferPool;
+
+    @Value("${scenarios.cache.max-cells:64000000}")
+    private long maxCells;
+
+    @Value("${scenarios.cache.max-bytes:536870912}")
+    private long maxCachedBytes;
+
+    private long cachedBytes;
+
+    private final LinkedHashMap<Key, ScenarioPaths> paths = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Scenari per i parametri richiesti, generati se assenti. Il chiamante deve chiudere l'istanza
+     * restituita (try-with-resources) quando ha finito di leggerla.
+     */
+    public ScenarioPaths acquire(Collection<String> universe, long seed, int months, int scenarios) {
+        CovarianceModel model = riskEngine.model();
+        SortedSet<String> ids = new TreeSet<>(universe);
+        long cells = (long) scenarios * months * ids.size();
+        if (cells > maxCells) {
+            throw new BadRequestException(String.format(
+                    "Matrice scenari troppo grande: %d celle (massimo %d)", cells, maxCells));
+        }
+        long bytes = requiredBytes(ids.size(), months, scenarios);
+        if (bytes > maxBytes()) {
+            throw new BadRequestException(String.format(
+                    "Matrice scenari troppo grande: %d byte (massimo %d)", bytes, maxBytes()));
+        }
+
+        Key key = new Key(List.copyOf(ids), seed, months, scenarios, model.getCatalogVersion(), MODEL_VERSION);
+        synchronized (paths) {
+            ScenarioPaths cached = paths.get(key);
+            if (cached != null) {
+                return cached.retain();
+            }
+        }
+
+        // Generazione fuori dal lock: due richieste concorrenti identiche producono la stessa matrice
+        ScenarioPaths generated = generate(model.returnModel(key.universe()), seed, months, scenarios);
+        synchronized (paths) {
+            ScenarioPaths cached = paths.putIfAbsent(key, generated);
+            if (cached != null) {
+                generated.close();
+                return cached.retain();
+            }
+            // Un riferimento resta alla cache, l'altro va al chiamante
+            generated.retain();
+            cachedBytes += generated.bytes();
+            evict(maxBytes());
+        }
+        log.debug("Generati {} scenari su {} mesi per {} ETF (seed {})", scenarios, months, ids.size(), seed);
+        return generated;
+    }
+
+    public long maxCells() {
+        return maxCells;
+    }
+
+    /**
+     * Limite in byte della cache e quindi della singola matrice: mai oltre quanto il pool può consegnare
+     */
+    public long maxBytes() {
+        return Math.min(maxCachedBytes, bufferPool.maxBufferBytes());
+    }
+
+    /**
+     * Byte occupati nel pool dalla matrice di rendimenti e dalle estrazioni per scenario e mese
+     */
+    public static long requiredBytes(int universeSize, int months, int scenarios) {
+        return OffHeapBufferPool.bufferBytes((long) scenarios * months * (universeSize + 1));
+    }
+
+    public int size() {
+        synchronized (paths) {
+            return paths.size();
+        }
+    }
+
+    /**
+     * Con il pool pieno le matrici in cache trattengono memoria senza essere lette: si espellono le meno
+     * recenti finché l'allocazione riesce. Una matrice ancora aperta da un'altra richiesta libera il
+     * buffer solo alla chiusura; a cache vuota il pool è occupato dai job in corso e l'errore risale (503)
+     */
+    private ScenarioPaths generate(CorrelatedReturnModel returnModel, long seed, int months, int scenarios) {
+        while (true) {
+            try {
+                return ScenarioPaths.generate(bufferPool, returnModel, seed, months, scenarios);
+            } catch (ServiceUnavailableException e) {
+                synchronized (paths) {
+                    if (paths.isEmpty()) {
+                        throw e;
+                    }
+                    log.debug("Pool off-heap pieno: espulsione degli scenari meno recenti");
+                    evictEldest();
+                }
+            }
+        }
+    }
+
+    private void evict(long limit) {
+        while (cachedBytes > limit && !paths.isEmpty()) {
+            evictEldest();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<ScenarioPaths> eldest = paths.values().iterator();
+        ScenarioPaths evicted = eldest.next();
+        cachedBytes -= evicted.bytes();
+        eldest.remove();
+        evicted.close();
+    }
+
+    private record Key(List<String> universe, long seed, int months, int scenarios,
+                       long catalogVersion, int modelVersion) {
+    }
+
+    /**
+     * Rendimenti mensili semplici per scenario, mese ed ETF in un buffer off-heap contiguo
+     * (indice [scenario][mese][ETF]), seguiti da un'estrazione uniforme per scenario e mese usata
+     * dalle strategie con versamento variabile. Immutabile dopo la generazione; il buffer torna al
+     * pool quando si chiude l'ultimo riferimento.
+     */
+    public static final class ScenarioPaths implements AutoCloseable {
+
+        private final Map<String, Integer> indexOf;
+        private final int assets;
+        private final int months;
+        private final int scenarios;
+        private final int noiseOffset;
+        private final OffHeapBufferPool.PathBuffer buffer;
+        private int references = 1;
+
+        private ScenarioPaths(OffHeapBufferPool pool, List<String> universe, int months, int scenarios) {
+            this.indexOf = new HashMap<>(Math.max(16, universe.size() * 2));
+            for (int i = 0; i < universe.size(); i++) {
+                indexOf.put(universe.get(i), i);
+            }
+            this.assets = universe.size();
+            this.months = months;
+            this.scenarios = scenarios;
+            this.noiseOffset = scenarios * months * assets;
+            this.buffer = pool.acquire((long) noiseOffset + (long) scenarios * months);
+        }
+
+        static ScenarioPaths generate(OffHeapBufferPool pool, CorrelatedReturnModel model,
+                                      long seed, int months, int scenarios) {
+            ScenarioPaths paths = new ScenarioPaths(pool, model.ids(), months, scenarios);
+            try {
+                paths.fill(model, seed);
+            } catch (RuntimeException e) {
+                paths.close();
+                throw e;
+            }
+            return paths;
+        }
+
+        /**
+         * Rendimenti dal modello correlato dell'universo: un generatore per scenario, così il
+         * contenuto non dipende dall'ordine di generazione
+         */
+        private void fill(CorrelatedReturnModel model, long seed) {
+            double[] scenario = new double[months * assets];
+            for (int s = 0; s < scenarios; s++) {
+                SplittableRandom random = new SplittableRandom(seed ^ (0xD1B54A32D192ED03L * (s + 1)));
+                model.generate(random, months, scenario, 0);
+                int base = s * months * assets;
+                for (int k = 0; k < scenario.length; k++) {
+                    buffer.put(base + k, scenario[k]);
+                }
+                for (int m = 0; m < months; m++) {
+                    buffer.put(noiseOffset + s * months + m, random.nextDouble());
+                }
+            }
+        }
+
+        public int assets() {
+            return assets;
+        }
+
+        public int months() {
+            return months;
+        }
+
+        public int scenarios() {
+            return scenarios;
+        }
+
+        long bytes() {
+            return buffer.capacityBytes();
+        }
+
+        synchronized ScenarioPaths retain() {
+            if (references == 0) {
+                throw new IllegalStateException("Scenari già rilasciati");
+            }
+            references++;
+            return this;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (references > 0 && --references == 0) {
+                buffer.close();
+            }
+        }
+
+        /**
+         * Pesi (frazioni) allineati agli indici della matrice; gli ETF fuori dall'universo sono un errore
+         */
+        public double[] weights(Map<String, Double> allocationPercentages) {
+            double[] weights = new double[assets];
+            allocationPercentages.forEach((etfId, percentage) -> {
+                Integer index = indexOf.get(etfId);
+                if (index == null) {
+                    throw new IllegalArgumentException("ETF non presente nell'universo degli scenari: " + etfId);
+                }
+                weights[index] = percentage != null ? percentage / 100 : 0;
+            });
+            return weights;
+        }
+
+        /**
+         * Rendimento del portafoglio nel mese (1..months) dello scenario: prodotto riga × pesi
+         */
+        public double portfolioReturn(int scenario, int month, double[] weights) {
+            int row = (scenario * months + month - 1) * assets;
+            double total = 0;
+            for (int i = 0; i < assets; i++) {
+                total += buffer.get(row + i) * weights[i];
+            }
+            return total;
+        }
+
+        public double noise(int scenario, int month) {
+            return buffer.get(noiseOffset + scenario * months + month - 1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package it.university.etfpac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.university.etfpac.dto.request.SimulationRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Frequenza degli scenari richiesti a {@code /simulations/run}, condivisa tra i nodi in Redis.
+ *
+ * Ogni richiesta incrementa il punteggio della sua impronta (la stessa chiave usata dalla cache
+ * "calculations") in un sorted set; il corpo della richiesta viene salvato una volta per impronta,
+ * così il {@link CacheWarmer} può rieseguire gli scenari più frequenti. Il numero di impronte
+ * tracciate è limitato da {@code cache.warmup.scenarios.max-tracked}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScenarioTrafficRecorder {
+
+    private static final String RANKING_KEY = "etfpac:warmup:scenarios";
+    private static final String REQUESTS_KEY = "etfpac:warmup:scenario-requests";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${cache.warmup.scenarios.max-tracked:1000}")
+    private int maxTracked;
+
+    public void record(SimulationRequest request) {
+        try {
+            String fingerprint = fingerprint(request);
+            redisTemplate.opsForZSet().incrementScore(RANKING_KEY, fingerprint, 1);
+            redisTemplate.opsForHash().putIfAbsent(REQUESTS_KEY, fingerprint, objectMapper.writeValueAsString(request));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Il conteggio è solo un suggerimento per il riscaldamento: non deve far fallire la richiesta
+            log.debug("Registrazione dello scenario per il riscaldamento fallita: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Le {@code limit} richieste più frequenti, dalla più richiesta, indicizzate per impronta
+     */
+    public Map<String, SimulationRequest> topScenarios(int limit) {
+        Set<String> fingerprints = redisTemplate.opsForZSet().reverseRange(RANKING_KEY, 0, limit - 1L);
+        if (fingerprints == null || fingerprints.isEmpty()) {
+            return Map.of();
+        }
+
+        List<Object> bodies = redisTemplate.opsForHash().multiGet(REQUESTS_KEY, new ArrayList<>(fingerprints));
+        Map<String, SimulationRequest> scenarios = new LinkedHashMap<>();
+        Iterator<Object> body = bodies.iterator();
+        for (String fingerprint : fingerprints) {
+            Object json = body.next();
+            if (json == null) {
+                continue;
+            }
+            try {
+                scenarios.put(fingerprint, objectMapper.readValue(json.toString(), SimulationRequest.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Scenario {} non leggibile, rimosso dal riscaldamento: {}", fingerprint, e.getMessage());
+                forget(fingerprint);
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Rimuove uno scenario che non è più eseguibile (ad esempio un ETF uscito dal catalogo)
+     */
+    public void forget(String fingerprint) {
+        redisTemplate.opsForZSet().remove(RANKING_KEY, fingerprint);
+        redisTemplate.opsForHash().delete(REQUESTS_KEY, fingerprint);
+    }
+
+    /**
+     * Mantiene solo le {@code max-tracked} impronte più frequenti
+     */
+    public void trim() {
+        Long tracked = redisTemplate.opsForZSet().zCard(RANKING_KEY);
+        if (tracked == null || tracked <= maxTracked) {
+            return;
+        }
+        Set<String> rarest = redisTemplate.opsForZSet().range(RANKING_KEY, 0, tracked - maxTracked - 1);
+        if (rarest != null && !rarest.isEmpty()) {
+            redisTemplate.opsForZSet().remove(RANKING_KEY, rarest.toArray());
+            redisTemplate.opsForHash().delete(REQUESTS_KEY, rarest.toArray());
+        }
+    }
+
+    private static String fingerprint(SimulationRequest request) {
+        return Integer.toString(request.hashCode());
+    }
+}
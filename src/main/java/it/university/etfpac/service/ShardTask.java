@@ -0,0 +1,20 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.entity.Simulation;
+
+/**
+ * Porzione indipendente di un job Monte Carlo: {@code units} unità di campionamento della replica
+ * {@code shard}, con generatore derivato da (seed, shard). Può essere eseguita su qualsiasi nodo.
+ */
+public record ShardTask(Simulation.Strategy strategy,
+                        double initialAmount,
+                        double monthlyAmount,
+                        int months,
+                        double annualReturn,
+                        double annualVolatility,
+                        boolean antithetic,
+                        boolean sobol,
+                        long seed,
+                        int shard,
+                        int units) {
+}
@@ -0,0 +1,311 @@
+package it.university.etfpac.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gestione delle partizioni mensili di {@code simulation_data} (migrazione V7).
+ *
+ * Ogni notte crea in anticipo le partizioni dei prossimi mesi ed elimina con un DROP le partizioni
+ * interamente più vecchie del periodo di conservazione: nessuna DELETE riga per riga, quindi né vacuum
+ * né indici gonfiati. Le simulazioni restano con le metriche riassuntive; perdono solo la serie mensile.
+ * Su database senza la tabella partizionata (H2 nei test) non fa nulla.
+ *
+ * Il job gira su un solo nodo alla volta (lock Redis). Ogni DDL ha un {@code lock_timeout} breve: se
+ * la tabella è occupata il job rinuncia e riprova la notte dopo invece di accodare le letture dietro
+ * il proprio lock. Le righe finite nella partizione di default vengono spostate nella partizione del
+ * loro mese quando questa viene creata.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SimulationDataRetention {
+
+    private static final String TABLE = "simulation_data";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final String JOB_LOCK_KEY = "etfpac:simulation-data-retention:lock";
+    private static final Pattern PARTITION_NAME = Pattern.compile(TABLE + "_(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+    private final MeterRegistry registry;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${simulation.data.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${simulation.data.retention.months:24}")
+    private int retentionMonths;
+
+    @Value("${simulation.data.retention.job-lock-ttl:PT30M}")
+    private Duration jobLockTtl;
+
+    @Value("${simulation.data.partitions.ahead-months:3}")
+    private int aheadMonths;
+
+    @Value("${simulation.data.partitions.lock-timeout-ms:5000}")
+    private long lockTimeoutMs;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private Boolean partitioned;
+
+    /**
+     * Tabella figlia con nome di partizione mensile o di default; {@code attached} falso per una
+     * partizione staccata ma non ancora eliminata
+     */
+    private record PartitionTable(String name, boolean attached, boolean detachPending) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${simulation.data.retention.cron:0 30 3 * * *}")
+    public void maintain() {
+        if (!enabled || !isPartitioned() || !acquireJobLock()) {
+            return;
+        }
+        try {
+            YearMonth current = YearMonth.now();
+            createPartitions(current, current.plusMonths(aheadMonths));
+            dropPartitionsBefore(current.minusMonths(retentionMonths));
+        } finally {
+            releaseJobLock();
+        }
+    }
+
+    /**
+     * Crea le partizioni mancanti da {@code from} a {@code to} inclusi e quelle dei mesi con righe
+     * rimaste nella partizione di default
+     */
+    public void createPartitions(YearMonth from, YearMonth to) {
+        Set<String> existing = new HashSet<>();
+        partitionTables().stream().filter(PartitionTable::attached).forEach(table -> existing.add(table.name()));
+
+        SortedSet<YearMonth> months = new TreeSet<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        Set<YearMonth> inDefault = existing.contains(DEFAULT_PARTITION) ? monthsInDefaultPartition() : Set.of();
+        months.addAll(inDefault);
+
+        for (YearMonth month : months) {
+            String partition = partitionName(month);
+            if (existing.contains(partition)) {
+                continue;
+            }
+            try {
+                if (inDefault.contains(month)) {
+                    attachWithRowsFromDefault(month);
+                } else {
+                    executeWithLockTimeout(String.format(
+                            "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                            partition, TABLE, month.atDay(1), month.plusMonths(1).atDay(1)));
+                }
+            } catch (DataAccessException e) {
+                log.warn("Creazione della partizione {} fallita: {}", partition, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Elimina le partizioni dei mesi precedenti a {@code cutoff}; restituisce quante ne ha eliminate
+     */
+    public int dropPartitionsBefore(YearMonth cutoff) {
+        List<PartitionTable> tables = partitionTables();
+        // DETACH CONCURRENTLY non è ammesso finché esiste una partizione di default: allora DETACH
+        // semplice, il cui lock esclusivo sulla tabella padre è limitato dal lock_timeout
+        boolean concurrently = tables.stream().noneMatch(table -> table.attached() && table.name().equals(DEFAULT_PARTITION));
+
+        int dropped = 0;
+        for (PartitionTable table : tables) {
+            Matcher matcher = PARTITION_NAME.matcher(table.name());
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (!month.isBefore(cutoff)) {
+                continue;
+            }
+            try {
+                if (table.detachPending()) {
+                    // DETACH CONCURRENTLY interrotto in una esecuzione precedente
+                    executeWithLockTimeout(String.format("ALTER TABLE %s DETACH PARTITION %s FINALIZE", TABLE, table.name()));
+                } else if (table.attached()) {
+                    executeWithLockTimeout(String.format("ALTER TABLE %s DETACH PARTITION %s%s",
+                            TABLE, table.name(), concurrently ? " CONCURRENTLY" : ""));
+                }
+                executeWithLockTimeout("DROP TABLE IF EXISTS " + table.name());
+                dropped++;
+                log.info("Partizione {} eliminata (conservazione {} mesi)", table.name(), retentionMonths);
+            } catch (DataAccessException e) {
+                log.warn("Eliminazione della partizione {} fallita: {}", table.name(), e.getMessage());
+            }
+        }
+
+        if (dropped > 0) {
+            droppedPartitions().increment(dropped);
+            // Le risposte in cache includono la serie mensile appena eliminata
+            Cache cache = cacheManager.getCache("simulations");
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Con righe del mese nella partizione di default la partizione non si può creare direttamente:
+     * in una sola transazione si crea la tabella, vi si spostano le righe e la si aggancia
+     */
+    private void attachWithRowsFromDefault(YearMonth month) {
+        String partition = partitionName(month);
+        String lower = month.atDay(1).toString();
+        String upper = month.plusMonths(1).atDay(1).toString();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+                statement.execute(String.format("CREATE TABLE %s (LIKE %s INCLUDING DEFAULTS INCLUDING CONSTRAINTS)",
+                        partition, TABLE));
+                int moved = statement.executeUpdate(String.format("""
+                        WITH moved AS (
+                            DELETE FROM %s WHERE created_at >= '%s' AND created_at < '%s' RETURNING *
+                        )
+                        INSERT INTO %s SELECT * FROM moved
+                        """, DEFAULT_PARTITION, lower, upper, partition));
+                statement.execute(String.format("ALTER TABLE %s ATTACH PARTITION %s FOR VALUES FROM ('%s') TO ('%s')",
+                        TABLE, partition, lower, upper));
+                connection.commit();
+                log.info("Partizione {} creata con {} righe spostate dalla partizione di default", partition, moved);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Esegue l'istruzione fuori transazione (richiesto da DETACH CONCURRENTLY) con un lock_timeout
+     * breve, ripristinato prima di restituire la connessione al pool
+     */
+    private void executeWithLockTimeout(String sql) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET lock_timeout = " + lockTimeoutMs);
+                try {
+                    statement.execute(sql);
+                } finally {
+                    statement.execute("RESET lock_timeout");
+                }
+            }
+            return null;
+        });
+    }
+
+    private List<PartitionTable> partitionTables() {
+        return jdbcTemplate.query("""
+                SELECT c.relname, p.relname IS NOT NULL AS attached, COALESCE(i.inhdetachpending, false) AS pending
+                  FROM pg_class c
+                  LEFT JOIN pg_inherits i ON i.inhrelid = c.oid
+                  LEFT JOIN pg_class p ON p.oid = i.inhparent AND p.relname = ?
+                 WHERE c.relkind = 'r' AND c.relname LIKE ?
+                """,
+                (rs, row) -> new PartitionTable(rs.getString(1), rs.getBoolean(2), rs.getBoolean(3)),
+                TABLE, TABLE + "\\_%");
+    }
+
+    private Set<YearMonth> monthsInDefaultPartition() {
+        Set<YearMonth> months = new HashSet<>();
+        for (String month : jdbcTemplate.queryForList(
+                "SELECT DISTINCT to_char(created_at, 'YYYY-MM') FROM " + DEFAULT_PARTITION, String.class)) {
+            months.add(YearMonth.parse(month));
+        }
+        return months;
+    }
+
+    /**
+     * Un solo nodo esegue la manutenzione; senza Redis si salta il giro, le partizioni sono già
+     * create con mesi di anticipo
+     */
+    private boolean acquireJobLock() {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(JOB_LOCK_KEY, nodeId, jobLockTtl))) {
+                return true;
+            }
+            log.debug("Manutenzione delle partizioni già in corso su un altro nodo");
+        } catch (RuntimeException e) {
+            log.warn("Lock della manutenzione delle partizioni non disponibile: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    private void releaseJobLock() {
+        try {
+            if (nodeId.equals(redisTemplate.opsForValue().get(JOB_LOCK_KEY))) {
+                redisTemplate.delete(JOB_LOCK_KEY);
+            }
+        } catch (RuntimeException e) {
+            // Scade da solo con il TTL
+            log.debug("Rilascio del lock della manutenzione fallito: {}", e.getMessage());
+        }
+    }
+
+    private boolean isPartitioned() {
+        if (partitioned == null) {
+            try {
+                Integer count = jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*)
+                          FROM pg_partitioned_table pt
+                          JOIN pg_class c ON c.oid = pt.partrelid
+                         WHERE c.relname = ?
+                        """, Integer.class, TABLE);
+                partitioned = count != null && count > 0;
+            } catch (DataAccessException e) {
+                partitioned = false;
+            }
+            if (!partitioned) {
+                log.info("Tabella {} non partizionata: gestione delle partizioni disattivata", TABLE);
+            }
+        }
+        return partitioned;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return TABLE + "_" + month.format(SUFFIX);
+    }
+
+    private Counter droppedPartitions() {
+        return Counter.builder("etfpac.simulation.data.partitions.dropped")
+                .description("Partizioni mensili di simulation_data eliminate dalla conservazione")
+                .register(registry);
+    }
+}
@@ -1,7 +1,8 @@
 package it.university.etfpac.service;
 
 import it.university.etfpac.entity.*;
-import it.university.etfpac.repository.ETFRepository;
+import it.university.etfpac.monitoring.SimulationMetrics;
+import it.university.etfpac.monitoring.SimulationPhaseEvent;
 import it.university.etfpac.repository.SimulationAllocationRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,70 +15,27 @@ import java.util.*;
 @Slf4j
 public class SimulationEngine {
 
-    private final ETFRepository etfRepository;
+    private final ETFCatalog etfCatalog;
     private final SimulationAllocationRepository allocationRepository;
+    private final SimulationMetrics metrics;
+    private final ReturnPathCache returnPathCache;
+    private final PortfolioRiskEngine riskEngine;
 
     public List<SimulationData> runSimulation(Simulation simulation) {
         log.info("Esecuzione simulazione per ID: {}", simulation.getId());
 
-        List<SimulationData> simulationData = new ArrayList<>();
+        SimulationPhaseEvent lookup = SimulationPhaseEvent.start("engine", "etf-lookup");
         List<SimulationAllocation> allocations = allocationRepository.findBySimulation(simulation);
+        // Gli ETF vengono letti dal catalogo: l'accesso all'ID non inizializza il proxy lazy
+        allocations.forEach(allocation -> allocation.setEtf(etfCatalog.get(allocation.getEtf().getId())));
+        lookup.simulationId(simulation.getId()).etfCount(allocations.size()).finish();
 
-        // Parametri di mercato
-        MarketFactors marketFactors = new MarketFactors();
-
-        double totalValue = 0;
-        double totalInvested = simulation.getInitialAmount();
-
-        for (int month = 0; month <= simulation.getInvestmentPeriod(); month++) {
-            // Calcola shock di mercato casuale
-            double marketShock = Math.random() < 0.05 ? (Math.random() - 0.5) * 0.3 : 0;
-            double inflationAdjustment = Math.pow(1 + marketFactors.getInflation() / 12, month);
-
-            double monthlyValue = 0;
-            double monthlyReturn = 0;
-
-            // Calcola performance per ogni ETF nell'allocazione
-            for (SimulationAllocation allocation : allocations) {
-                ETF etf = allocation.getEtf();
-                double percentage = allocation.getPercentage();
-
-                if (percentage > 0) {
-                    double baseReturn = (etf.getFiveYear() / 100) / 12; // Rendimento mensile atteso
-                    double volatility = calculateVolatility(etf.getRisk());
-                    double randomFactor = (Math.random() - 0.5) * volatility + marketShock;
-                    double monthlyPerformance = baseReturn + randomFactor;
-
-                    double etfValue = (totalValue * percentage / 100) * (1 + monthlyPerformance);
-                    monthlyValue += etfValue;
-                    monthlyReturn += monthlyPerformance * (percentage / 100);
-                }
-            }
-
-            // Calcola investimento mensile con strategia selezionata
-            double monthlyInvestment = month == 0 ? simulation.getInitialAmount() :
-                    calculateMonthlyInvestment(simulation, month, monthlyReturn, totalValue, totalInvested);
-
-            if (month > 0) {
-                totalInvested += monthlyInvestment;
-                totalValue += monthlyInvestment;
-            }
-
-            totalValue = monthlyValue > 0 ? monthlyValue : totalValue;
-
-            SimulationData dataPoint = new SimulationData();
-            dataPoint.setSimulation(simulation);
-            dataPoint.setMonth(month);
-            dataPoint.setTotalValue(totalValue);
-            dataPoint.setTotalInvested(totalInvested);
-            dataPoint.setMonthlyInvestment(monthlyInvestment);
-            dataPoint.setMonthlyReturn(monthlyReturn * 100);
-            dataPoint.setCumulativeReturn(((totalValue - totalInvested) / totalInvested) * 100);
-            dataPoint.setInflationAdjustedValue(totalValue / inflationAdjustment);
-            dataPoint.setSharpeRatio(month > 12 ? (monthlyReturn - 0.02) / 0.1 : 0.0);
-
-            simulationData.add(dataPoint);
-        }
+        SimulationPhaseEvent loop = SimulationPhaseEvent.start("engine", "month-loop");
+        List<SimulationData> simulationData = metrics.recordEngineRun(strategyTag(simulation),
+                simulation.getInvestmentPeriod(), 1, () -> simulateAllocations(simulation, allocations));
+        simulationData.forEach(dataPoint -> dataPoint.setSimulation(simulation));
+        loop.simulationId(simulation.getId()).months(simulation.getInvestmentPeriod())
+                .etfCount(allocations.size()).finish();
 
         log.info("Simulazione completata per ID: {}", simulation.getId());
         return simulationData;
@@ -122,20 +80,13 @@ public class SimulationEngine {
                 .build();
     }
 
-    private double calculateVolatility(ETF.RiskLevel risk) {
-        return switch (risk) {
-            case LOW -> 0.02;
-            case MEDIUM -> 0.04;
-            case HIGH -> 0.06;
-            case VERY_HIGH -> 0.08;
-        };
-    }
-
-    private double calculateMonthlyInvestment(Simulation simulation, int month,
-                                              double monthlyReturn, double totalValue, double totalInvested) {
-        double baseAmount = simulation.getMonthlyAmount();
-
-        return switch (simulation.getStrategy()) {
+    /**
+     * Versamento del mese secondo la strategia; {@code noise} è un valore uniforme in [0, 1)
+     * usato dalle strategie con componente casuale, così il Monte Carlo può fornirlo in modo riproducibile
+     */
+    static double monthlyContribution(Simulation.Strategy strategy, double baseAmount, int month,
+                                      double monthlyReturn, double totalValue, double totalInvested, double noise) {
+        return switch (strategy) {
             case VALUE_AVERAGING -> {
                 double targetValue = totalInvested + (baseAmount * month);
                 yield Math.max(0, targetValue - totalValue);
@@ -149,12 +100,12 @@ public class SimulationEngine {
                 yield baseAmount * (1 + Math.max(-0.5, contrarian));
             }
             case SMART_BETA -> {
-                double smartFactor = (monthlyReturn * 2) + (Math.random() - 0.5) * 0.1;
+                double smartFactor = (monthlyReturn * 2) + (noise - 0.5) * 0.1;
                 yield baseAmount * (1 + smartFactor * 0.5);
             }
             case TACTICAL -> {
                 // Allocazione tattica basata su condizioni di mercato
-                double tacticalFactor = Math.random() > 0.5 ? 1.2 : 0.8;
+                double tacticalFactor = noise > 0.5 ? 1.2 : 0.8;
                 yield baseAmount * tacticalFactor;
             }
             default -> baseAmount; // DCA
@@ -182,51 +133,80 @@ public class SimulationEngine {
     public List<SimulationData> runSimulationWithAllocations(Simulation simulation, List<SimulationAllocation> allocations) {
         log.info("Esecuzione simulazione con allocazioni temporanee");
 
-        List<SimulationData> simulationData = new ArrayList<>();
+        SimulationPhaseEvent loop = SimulationPhaseEvent.start("engine", "month-loop");
+        List<SimulationData> simulationData = metrics.recordEngineRun(strategyTag(simulation),
+                simulation.getInvestmentPeriod(), 1, () -> simulateAllocations(simulation, allocations));
+        loop.months(simulation.getInvestmentPeriod()).etfCount(allocations.size()).finish();
 
-        // I Parametri di mercato
-        MarketFactors marketFactors = new MarketFactors();
+        log.info("Simulazione temporanea completata");
+        return simulationData;
+    }
 
-        double totalValue = simulation.getInitialAmount();
-        double totalInvested = simulation.getInitialAmount();
+    /**
+     * Un percorso di rendimenti correlati (fattore di Cholesky della covarianza degli ETF allocati)
+     * seguito dall'accumulo dei versamenti secondo la strategia
+     */
+    private List<SimulationData> simulateAllocations(Simulation simulation, List<SimulationAllocation> allocations) {
+        int months = simulation.getInvestmentPeriod();
+        Map<String, Double> percentages = new HashMap<>();
+        for (SimulationAllocation allocation : allocations) {
+            if (allocation.getPercentage() > 0) {
+                percentages.merge(allocation.getEtf().getId(), allocation.getPercentage(), Double::sum);
+            }
+        }
 
-        for (int month = 0; month <= simulation.getInvestmentPeriod(); month++) {
-            // Calcola lo shock di mercato casuale
-            double marketShock = Math.random() < 0.05 ? (Math.random() - 0.5) * 0.3 : 0;
-            double inflationAdjustment = Math.pow(1 + marketFactors.getInflation() / 12, month);
+        SplittableRandom random = new SplittableRandom();
+        double[] returns = new double[months + 1];
+        double[] noise = new double[months + 1];
+        if (!percentages.isEmpty()) {
+            CorrelatedReturnModel model = riskEngine.returnModel(percentages.keySet());
+            model.generatePortfolio(random, model.weights(percentages), months, returns, 1);
+        }
+        for (int month = 1; month <= months; month++) {
+            noise[month] = random.nextDouble();
+        }
 
-            double monthlyValue = 0;
-            double monthlyReturn = 0;
+        return accumulate(simulation, returns, noise, months);
+    }
 
-            // Calcola le  performance per ogni ETF nell'allocazione
-            for (SimulationAllocation allocation : allocations) {
-                ETF etf = allocation.getEtf();
-                double percentage = allocation.getPercentage();
+    /**
+     * Simulazione riproducibile: il percorso dei rendimenti viene dalla cache (o ne estende il prefisso)
+     * e si ricalcola solo l'accumulo dei versamenti, lineare nei mesi e senza estrazioni casuali
+     */
+    public List<SimulationData> runSeededSimulation(Simulation simulation, Map<String, Double> allocation, long seed) {
+        SimulationPhaseEvent pathPhase = SimulationPhaseEvent.start("engine", "return-path");
+        ReturnPathCache.ReturnPath.Prefix path = returnPathCache.get(allocation, seed, simulation.getInvestmentPeriod());
+        pathPhase.months(simulation.getInvestmentPeriod()).etfCount(allocation.size()).finish();
+
+        SimulationPhaseEvent loop = SimulationPhaseEvent.start("engine", "accumulate");
+        List<SimulationData> simulationData = metrics.recordEngineRun(strategyTag(simulation),
+                simulation.getInvestmentPeriod(), 1, () -> accumulate(simulation, path.returns(), path.noise(), path.months()));
+        loop.months(simulation.getInvestmentPeriod()).finish();
+        return simulationData;
+    }
 
-                if (percentage > 0) {
-                    double baseReturn = (etf.getFiveYear() / 100) / 12; // Rendimento mensile atteso
-                    double volatility = calculateVolatility(etf.getRisk());
-                    double randomFactor = (Math.random() - 0.5) * volatility + marketShock;
-                    double monthlyPerformance = baseReturn + randomFactor;
+    /**
+     * Accumulo dei versamenti su rendimenti e componenti casuali già estratti (indici 1..months)
+     */
+    private List<SimulationData> accumulate(Simulation simulation, double[] returns, double[] noise, int months) {
+        MarketFactors marketFactors = new MarketFactors();
+        List<SimulationData> simulationData = new ArrayList<>(months + 1);
 
-                    double etfValue = (totalValue * percentage / 100) * (1 + monthlyPerformance);
-                    monthlyValue += etfValue;
-                    monthlyReturn += monthlyPerformance * (percentage / 100);
-                }
-            }
+        double totalValue = simulation.getInitialAmount();
+        double totalInvested = simulation.getInitialAmount();
 
-            // Calcola l'investimento mensile con strategia selezionata
-            double monthlyInvestment = month == 0 ? simulation.getInitialAmount() :
-                    calculateMonthlyInvestment(simulation, month, monthlyReturn, totalValue, totalInvested);
+        for (int month = 0; month <= months; month++) {
+            double monthlyReturn = month > 0 ? returns[month] : 0;
+            double monthlyInvestment = simulation.getInitialAmount();
 
             if (month > 0) {
-                totalInvested += monthlyInvestment;
+                totalValue *= 1 + monthlyReturn;
+                monthlyInvestment = monthlyContribution(simulation.getStrategy(), simulation.getMonthlyAmount(), month,
+                        monthlyReturn, totalValue, totalInvested, noise[month]);
                 totalValue += monthlyInvestment;
+                totalInvested += monthlyInvestment;
             }
 
-            totalValue = monthlyValue > 0 ? monthlyValue : totalValue;
-
-            // Crea punto dati
             SimulationData dataPoint = new SimulationData();
             dataPoint.setMonth(month);
             dataPoint.setTotalValue(totalValue);
@@ -234,16 +214,19 @@ public class SimulationEngine {
             dataPoint.setMonthlyInvestment(monthlyInvestment);
             dataPoint.setMonthlyReturn(monthlyReturn * 100);
             dataPoint.setCumulativeReturn(((totalValue - totalInvested) / totalInvested) * 100);
-            dataPoint.setInflationAdjustedValue(totalValue / inflationAdjustment);
+            dataPoint.setInflationAdjustedValue(totalValue / Math.pow(1 + marketFactors.getInflation() / 12, month));
             dataPoint.setSharpeRatio(month > 12 ? (monthlyReturn - 0.02) / 0.1 : 0.0);
 
             simulationData.add(dataPoint);
         }
 
-        log.info("Simulazione temporanea completata");
         return simulationData;
     }
 
+    private static String strategyTag(Simulation simulation) {
+        return simulation.getStrategy() != null ? simulation.getStrategy().name() : null;
+    }
+
     // ClassE helper
     private static class MarketFactors {
         private final double inflation = 0.02;
@@ -1,18 +1,32 @@
 package it.university.etfpac.service;
 
+import it.university.etfpac.dto.request.BatchSimulationRequest;
+import it.university.etfpac.dto.request.ScenarioComparisonRequest;
 import it.university.etfpac.dto.request.SimulationRequest;
+import it.university.etfpac.dto.response.BatchSimulationResponse;
+import it.university.etfpac.dto.response.CursorPage;
+import it.university.etfpac.dto.response.DirectSimulationResponse;
+import it.university.etfpac.dto.response.MonteCarloResponse;
+import it.university.etfpac.dto.response.ScenarioComparisonResponse;
 import it.university.etfpac.dto.response.SimulationResponse;
 import it.university.etfpac.entity.*;
 import it.university.etfpac.exception.BadRequestException;
 import it.university.etfpac.exception.ResourceNotFoundException;
 import it.university.etfpac.exception.SimulationException;
+import it.university.etfpac.monitoring.SimulationMetrics;
+import it.university.etfpac.monitoring.SimulationPhaseEvent;
 import it.university.etfpac.repository.*;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,6 +34,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,13 +49,124 @@ public class SimulationService {
     private final SimulationAllocationRepository allocationRepository;
     private final SimulationDataRepository dataRepository;
     private final SimulationEngine simulationEngine;
+    private final MonteCarloEngine monteCarloEngine;
+    private final ScenarioComparisonEngine scenarioComparisonEngine;
+    private final ScenarioPathCache scenarioPathCache;
+    private final ETFCatalog etfCatalog;
+    private final Validator validator;
+    private final SimulationMetrics metrics;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Qualifier("computeExecutor")
+    private final Executor computeExecutor;
 
     @Cacheable(value = "calculations", key = "#request.hashCode()")
-    public Map<String, Object> runSimulationDirect(SimulationRequest request) {
+    public DirectSimulationResponse runSimulationDirect(SimulationRequest request) {
         log.info("Esecuzione diretta simulazione");
+        return simulateDirect("runSimulationDirect", request);
+    }
+
+    /**
+     * Ricalcola la simulazione diretta e sostituisce il risultato in cache; usato dal riscaldamento
+     * dopo una modifica al catalogo, quando il valore in cache è calcolato sul catalogo precedente
+     */
+    @CachePut(value = "calculations", key = "#request.hashCode()")
+    public DirectSimulationResponse refreshSimulationDirect(SimulationRequest request) {
+        return simulateDirect("refreshSimulationDirect", request);
+    }
+
+    private DirectSimulationResponse simulateDirect(String operation, SimulationRequest request) {
+        SimulationPhaseEvent lookup = SimulationPhaseEvent.start(operation, "etf-lookup");
+        Map<String, ETF> etfs = loadEtfs(request.getEtfAllocation().keySet());
+        lookup.etfCount(etfs.size()).finish();
+
+        return executeDirect(operation, request, etfs);
+    }
+
+    /**
+     * Distribuzione Monte Carlo del piano; in cache solo con seed esplicito, quando il risultato è riproducibile
+     */
+    @Cacheable(value = "calculations", key = "'mc_' + #request.hashCode()", condition = "#request.seed != null")
+    public MonteCarloResponse runMonteCarlo(SimulationRequest request) {
+        log.info("Esecuzione Monte Carlo: {} percorsi", request.getPaths());
+
+        Map<String, ETF> etfs = loadEtfs(request.getEtfAllocation().keySet());
+        validateSimulationRequest(request, etfs);
+
+        return monteCarloEngine.run(request);
+    }
+
+    /**
+     * Esegue più scenari in parallelo risolvendo gli ETF di tutti gli scenari con un'unica query
+     */
+    @Transactional(readOnly = true)
+    public BatchSimulationResponse runSimulationBatch(BatchSimulationRequest batchRequest) {
+        List<SimulationRequest> scenarios = batchRequest.getScenarios();
+        log.info("Esecuzione batch di {} simulazioni", scenarios.size());
+
+        Set<String> etfIds = scenarios.stream()
+                .filter(scenario -> scenario != null && scenario.getEtfAllocation() != null)
+                .flatMap(scenario -> scenario.getEtfAllocation().keySet().stream())
+                .collect(Collectors.toSet());
+        Map<String, ETF> etfs = loadEtfs(etfIds);
+
+        List<CompletableFuture<BatchSimulationResponse.ScenarioResult>> futures = new ArrayList<>();
+        for (int i = 0; i < scenarios.size(); i++) {
+            final int index = i;
+            final SimulationRequest scenario = scenarios.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> runScenario(index, scenario, etfs), computeExecutor));
+        }
+
+        List<BatchSimulationResponse.ScenarioResult> results = futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+
+        int succeeded = (int) results.stream().filter(BatchSimulationResponse.ScenarioResult::getSuccess).count();
+        log.info("Batch completato: {}/{} scenari riusciti", succeeded, results.size());
+
+        return BatchSimulationResponse.builder()
+                .totalScenarios(results.size())
+                .succeeded(succeeded)
+                .failed(results.size() - succeeded)
+                .scenarios(results)
+                .build();
+    }
+
+    private BatchSimulationResponse.ScenarioResult runScenario(int index, SimulationRequest scenario,
+                                                               Map<String, ETF> etfs) {
+        BatchSimulationResponse.ScenarioResult.ScenarioResultBuilder result = BatchSimulationResponse.ScenarioResult.builder()
+                .index(index)
+                .name(scenario != null ? scenario.getName() : null);
 
+        if (scenario == null) {
+            return result.success(false).error("Scenario mancante").build();
+        }
+
+        Set<ConstraintViolation<SimulationRequest>> violations = validator.validate(scenario);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(v -> v.getPropertyPath() + " - " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return result.success(false).error("Errori di validazione: " + message).build();
+        }
+
+        try {
+            return result.success(true).result(executeDirect("runSimulationBatch", scenario, etfs)).build();
+        } catch (BadRequestException | ResourceNotFoundException e) {
+            return result.success(false).error(e.getMessage()).build();
+        } catch (RuntimeException e) {
+            log.error("Errore nello scenario {} del batch", index, e);
+            return result.success(false).error("Errore durante la simulazione: " + e.getMessage()).build();
+        }
+    }
+
+    /**
+     * Esegue una simulazione non persistita usando ETF già risolti
+     */
+    private DirectSimulationResponse executeDirect(String operation, SimulationRequest request, Map<String, ETF> etfs) {
         // Validazione
-        validateSimulationRequest(request);
+        validateSimulationRequest(request, etfs);
 
         // Crea simulazione temporanea (non salvata)
         Simulation tempSimulation = new Simulation();
@@ -60,63 +186,65 @@ public class SimulationService {
         List<SimulationAllocation> tempAllocations = new ArrayList<>();
         for (Map.Entry<String, Double> entry : request.getEtfAllocation().entrySet()) {
             if (entry.getValue() > 0) {
-                ETF etf = etfRepository.findById(entry.getKey())
-                        .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato: " + entry.getKey()));
-
                 SimulationAllocation allocation = new SimulationAllocation();
-                allocation.setEtf(etf);
+                allocation.setEtf(etfs.get(entry.getKey()));
                 allocation.setPercentage(entry.getValue());
                 tempAllocations.add(allocation);
             }
         }
 
         // Esegui simulazione usando il motore
-        List<SimulationData> simulationData = simulationEngine.runSimulationWithAllocations(tempSimulation, tempAllocations);
+        SimulationPhaseEvent engine = SimulationPhaseEvent.start(operation, "engine");
+        List<SimulationData> simulationData = request.getSeed() != null
+                ? simulationEngine.runSeededSimulation(tempSimulation, request.getEtfAllocation(), request.getSeed())
+                : simulationEngine.runSimulationWithAllocations(tempSimulation, tempAllocations);
+        engine.months(request.getInvestmentPeriod()).etfCount(tempAllocations.size()).finish();
 
         // Calcola risultati
+        SimulationPhaseEvent resultsPhase = SimulationPhaseEvent.start(operation, "results");
         SimulationResults results = simulationEngine.calculateResults(simulationData);
-
-        Map<String, Object> response = new HashMap<>();
-        response.put("simulationData", simulationData.stream()
-                .map(data -> {
-                    Map<String, Object> dataPoint = new HashMap<>();
-                    dataPoint.put("month", data.getMonth());
-                    dataPoint.put("totalValue", data.getTotalValue());
-                    dataPoint.put("totalInvested", data.getTotalInvested());
-                    dataPoint.put("monthlyReturn", data.getMonthlyReturn());
-                    dataPoint.put("cumulativeReturn", data.getCumulativeReturn());
-                    dataPoint.put("monthlyInvestment", data.getMonthlyInvestment());
-                    dataPoint.put("inflationAdjustedValue", data.getInflationAdjustedValue());
-                    return dataPoint;
-                })
-                .collect(Collectors.toList()));
-
-        // Crea la mappa dei risultati usando HashMap invece di Map.of()
-        Map<String, Object> resultsMap = new HashMap<>();
-        resultsMap.put("finalValue", results.getFinalValue());
-        resultsMap.put("totalInvested", results.getTotalInvested());
-        resultsMap.put("cumulativeReturn", results.getCumulativeReturn());
-        resultsMap.put("volatility", results.getVolatility());
-        resultsMap.put("maxDrawdown", results.getMaxDrawdown());
-        resultsMap.put("sharpeRatio", results.getSharpeRatio());
-        resultsMap.put("winRate", results.getWinRate());
-        resultsMap.put("annualizedReturn", calculateAnnualizedReturn(simulationData));
-        resultsMap.put("bestMonth", calculateBestMonth(simulationData));
-        resultsMap.put("worstMonth", calculateWorstMonth(simulationData));
-        resultsMap.put("consistency", calculateConsistency(simulationData));
-        resultsMap.put("calmarRatio", calculateCalmarRatio(results));
-
-        response.put("results", resultsMap);
+        resultsPhase.months(request.getInvestmentPeriod()).finish();
+
+        SimulationPhaseEvent mapping = SimulationPhaseEvent.start(operation, "mapping");
+        DirectSimulationResponse response = DirectSimulationResponse.builder()
+                .simulationData(simulationData.stream()
+                        .map(data -> DirectSimulationResponse.DataPoint.builder()
+                                .month(data.getMonth())
+                                .totalValue(data.getTotalValue())
+                                .totalInvested(data.getTotalInvested())
+                                .monthlyReturn(data.getMonthlyReturn())
+                                .cumulativeReturn(data.getCumulativeReturn())
+                                .monthlyInvestment(data.getMonthlyInvestment())
+                                .inflationAdjustedValue(data.getInflationAdjustedValue())
+                                .build())
+                        .collect(Collectors.toList()))
+                .results(DirectSimulationResponse.Results.builder()
+                        .finalValue(results.getFinalValue())
+                        .totalInvested(results.getTotalInvested())
+                        .cumulativeReturn(results.getCumulativeReturn())
+                        .volatility(results.getVolatility())
+                        .maxDrawdown(results.getMaxDrawdown())
+                        .sharpeRatio(results.getSharpeRatio())
+                        .winRate(results.getWinRate())
+                        .annualizedReturn(calculateAnnualizedReturn(simulationData))
+                        .bestMonth(calculateBestMonth(simulationData))
+                        .worstMonth(calculateWorstMonth(simulationData))
+                        .consistency(calculateConsistency(simulationData))
+                        .calmarRatio(calculateCalmarRatio(results))
+                        .build())
+                .seed(request.getSeed())
+                .build();
+        mapping.months(request.getInvestmentPeriod()).finish();
 
         return response;
     }
 
-    @CachePut(value = "simulations", key = "#result.id")
     public SimulationResponse createSimulation(SimulationRequest request) {
         log.info("Creazione nuova simulazione: {}", request.getName());
 
         // Validazione
-        validateSimulationRequest(request);
+        Map<String, ETF> etfs = loadEtfs(request.getEtfAllocation().keySet());
+        validateSimulationRequest(request, etfs);
 
         User user = userRepository.findById(request.getUserId())
                 .orElseThrow(() -> new ResourceNotFoundException("Utente non trovato"));
@@ -143,11 +271,16 @@ public class SimulationService {
         saveAllocations(savedSimulation, request.getEtfAllocation());
 
         log.info("Simulazione creata con ID: {}", savedSimulation.getId());
+        eventPublisher.publishEvent(DomainChangeEvent.created(DomainChangeEvent.Entity.SIMULATION, savedSimulation.getId(),
+                savedSimulation.getUser().getId()));
 
         // Esegui simulazione automaticamente
         runSimulation(savedSimulation.getId());
 
-        return convertToResponse(savedSimulation);
+        SimulationPhaseEvent mapping = SimulationPhaseEvent.start("createSimulation", "mapping");
+        SimulationResponse response = convertToResponse(savedSimulation);
+        mapping.simulationId(savedSimulation.getId()).months(savedSimulation.getInvestmentPeriod()).finish();
+        return response;
     }
 
     /**
@@ -158,19 +291,26 @@ public class SimulationService {
         log.info("Avvio simulazione asincrona con ID: {}", simulationId);
 
         try {
+            SimulationPhaseEvent load = SimulationPhaseEvent.start("runSimulation", "load");
             Simulation simulation = simulationRepository.findById(simulationId)
                     .orElseThrow(() -> new ResourceNotFoundException("Simulazione non trovata"));
 
             simulation.setStatus(Simulation.SimulationStatus.RUNNING);
             simulationRepository.save(simulation);
+            load.simulationId(simulationId).finish();
 
             // Esegue la simulazione
+            SimulationPhaseEvent engine = SimulationPhaseEvent.start("runSimulation", "engine");
             List<SimulationData> simulationData = simulationEngine.runSimulation(simulation);
+            engine.simulationId(simulationId).months(simulation.getInvestmentPeriod()).finish();
 
             // Salva i dati simulazione
-            dataRepository.saveAll(simulationData);
+            SimulationPhaseEvent persist = SimulationPhaseEvent.start("runSimulation", "persist");
+            metrics.recordDataWrite(simulationData.size(), () -> dataRepository.saveAll(simulationData));
+            persist.simulationId(simulationId).rowsWritten(simulationData.size()).finish();
 
             // Calcola le metriche finali
+            SimulationPhaseEvent resultsPhase = SimulationPhaseEvent.start("runSimulation", "results");
             SimulationResults results = simulationEngine.calculateResults(simulationData);
 
             // Aggiorna la simulazione con risultati
@@ -184,6 +324,9 @@ public class SimulationService {
             simulation.setStatus(Simulation.SimulationStatus.COMPLETED);
 
             simulationRepository.save(simulation);
+            resultsPhase.simulationId(simulationId).months(simulation.getInvestmentPeriod()).finish();
+            eventPublisher.publishEvent(DomainChangeEvent.updated(DomainChangeEvent.Entity.SIMULATION, simulationId,
+                    simulation.getUser().getId()));
 
             log.info("Simulazione completata con successo per ID: {}", simulationId);
             return CompletableFuture.completedFuture(null);
@@ -195,6 +338,8 @@ public class SimulationService {
             if (simulation != null) {
                 simulation.setStatus(Simulation.SimulationStatus.FAILED);
                 simulationRepository.save(simulation);
+                eventPublisher.publishEvent(DomainChangeEvent.updated(DomainChangeEvent.Entity.SIMULATION, simulationId,
+                        simulation.getUser().getId()));
             }
 
             throw new SimulationException("Errore nell'esecuzione della simulazione", e);
@@ -202,9 +347,10 @@ public class SimulationService {
     }
 
     /**
-     * Recupera una simulazione per ID
+     * Recupera una simulazione per ID. Le simulazioni in attesa o in esecuzione non vanno in cache: una
+     * lettura iniziata prima del completamento potrebbe salvarle dopo l'invalidazione e tenerle ferme fino al TTL
      */
-    @Cacheable(value = "simulations", key = "#id")
+    @Cacheable(value = "simulations", key = "#id", unless = "#result.status == 'pending' || #result.status == 'running'")
     @Transactional(readOnly = true)
     public SimulationResponse getSimulationById(Long id) {
         log.info("Recupero simulazione con ID: {}", id);
@@ -215,6 +361,16 @@ public class SimulationService {
         return convertToResponse(simulation);
     }
 
+    /**
+     * Versione della simulazione per ETag e Last-Modified, letta senza caricare allocazioni e dati
+     */
+    @Transactional(readOnly = true)
+    public ResourceVersion getSimulationVersion(Long id) {
+        return simulationRepository.findUpdatedAtById(id)
+                .map(updatedAt -> ResourceVersion.of("s", id, updatedAt))
+                .orElseThrow(() -> new ResourceNotFoundException("Simulazione non trovata con ID: " + id));
+    }
+
     /**
      * Recupera tutte le simulazioni
      */
@@ -222,8 +378,7 @@ public class SimulationService {
     public List<SimulationResponse> getAllSimulations() {
         log.info("Recupero tutte le simulazioni");
 
-        return simulationRepository.findAll().stream()
-                .sorted((a, b) -> b.getCreatedAt().compareTo(a.getCreatedAt()))
+        return simulationRepository.findAll(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"))).stream()
                 .map(this::convertToResponse)
                 .collect(Collectors.toList());
     }
@@ -237,11 +392,12 @@ public class SimulationService {
         Simulation simulation = simulationRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Simulazione non trovata"));
 
-        // Elimina dati correlati
-        allocationRepository.deleteBySimulation(simulation);
-        dataRepository.deleteBySimulation(simulation);
+        // Elimina dati correlati con DELETE in blocco; la serie mensile non precede la creazione della simulazione
+        allocationRepository.deleteBySimulationId(id);
+        dataRepository.deleteBySimulationId(id, simulation.getCreatedAt());
 
         simulationRepository.delete(simulation);
+        eventPublisher.publishEvent(DomainChangeEvent.deleted(DomainChangeEvent.Entity.SIMULATION, id, simulation.getUser().getId()));
         log.info("Simulazione eliminata con successo");
     }
 
@@ -285,6 +441,8 @@ public class SimulationService {
                 .collect(Collectors.toList());
 
         allocationRepository.saveAll(clonedAllocations);
+        eventPublisher.publishEvent(DomainChangeEvent.created(DomainChangeEvent.Entity.SIMULATION, savedClone.getId(),
+                savedClone.getUser().getId()));
 
         return convertToResponse(savedClone);
     }
@@ -311,10 +469,48 @@ public class SimulationService {
         return comparison;
     }
 
+    /**
+     * Confronta più allocazioni sugli stessi scenari di mercato; in cache solo con seed esplicito
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(value = "calculations", key = "'scenarios_' + #request.hashCode()", condition = "#request.seed != null")
+    public ScenarioComparisonResponse compareOnCommonScenarios(ScenarioComparisonRequest request) {
+        Set<String> universe = new HashSet<>();
+        request.getPortfolios().forEach(portfolio -> universe.addAll(portfolio.getEtfAllocation().keySet()));
+        log.info("Confronto di {} portafogli su {} scenari comuni", request.getPortfolios().size(), request.getScenarios());
+
+        Map<String, ETF> etfs = loadEtfs(universe);
+        for (String etfId : universe) {
+            if (!etfs.containsKey(etfId)) {
+                throw new BadRequestException("ETF non trovato: " + etfId);
+            }
+        }
+
+        long cells = (long) request.getScenarios() * request.getInvestmentPeriod() * universe.size();
+        if (cells > scenarioPathCache.maxCells()) {
+            throw new BadRequestException(String.format(
+                    "Troppi scenari per orizzonte e numero di ETF: %d celle (massimo %d)", cells, scenarioPathCache.maxCells()));
+        }
+        long bytes = ScenarioPathCache.requiredBytes(universe.size(), request.getInvestmentPeriod(), request.getScenarios());
+        if (bytes > scenarioPathCache.maxBytes()) {
+            throw new BadRequestException(String.format(
+                    "Troppi scenari per orizzonte e numero di ETF: %d byte di memoria (massimo %d)", bytes, scenarioPathCache.maxBytes()));
+        }
+
+        return scenarioComparisonEngine.compare(request);
+    }
+
+    /**
+     * Risolve dal catalogo in memoria gli ETF richiesti, indicizzati per ID
+     */
+    private Map<String, ETF> loadEtfs(Collection<String> etfIds) {
+        return etfCatalog.snapshot().findAll(etfIds);
+    }
+
     /**
      * Valida i parametri della richiesta di simulazione
      */
-    private void validateSimulationRequest(SimulationRequest request) {
+    private void validateSimulationRequest(SimulationRequest request, Map<String, ETF> etfs) {
         // Validazione allocazioni
         double totalAllocation = request.getEtfAllocation().values().stream()
                 .mapToDouble(Double::doubleValue)
@@ -326,7 +522,7 @@ public class SimulationService {
 
         // Validazione ETF esistenti
         for (String etfId : request.getEtfAllocation().keySet()) {
-            if (!etfRepository.existsById(etfId)) {
+            if (!etfs.containsKey(etfId)) {
                 throw new BadRequestException("ETF non trovato: " + etfId);
             }
         }
@@ -353,12 +549,10 @@ public class SimulationService {
 
         for (Map.Entry<String, Double> entry : allocations.entrySet()) {
             if (entry.getValue() > 0) {
-                ETF etf = etfRepository.findById(entry.getKey())
-                        .orElseThrow(() -> new ResourceNotFoundException("ETF non trovato: " + entry.getKey()));
-
+                // Gli ETF sono già validati sul catalogo: basta un riferimento per la chiave esterna
                 SimulationAllocation allocation = new SimulationAllocation();
                 allocation.setSimulation(simulation);
-                allocation.setEtf(etf);
+                allocation.setEtf(etfRepository.getReferenceById(entry.getKey()));
                 allocation.setPercentage(entry.getValue());
 
                 allocationEntities.add(allocation);
@@ -528,6 +722,25 @@ public class SimulationService {
         return simulationPage.map(this::convertToResponse);
     }
 
+    /**
+     * Simulazioni dalla più recente con paginazione keyset su (created_at, id): nessuna query di conteggio
+     * e costo costante a qualunque profondità
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<SimulationResponse> getSimulationsPage(String cursor, int size) {
+        KeysetCursor.validateSize(size);
+
+        List<Simulation> simulations;
+        if (cursor == null || cursor.isBlank()) {
+            simulations = simulationRepository.findLatest(KeysetCursor.limit(size));
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            simulations = simulationRepository.findLatestBefore(after.createdAt(), after.id(), KeysetCursor.limit(size));
+        }
+        return KeysetCursor.page(simulations, size, s -> new KeysetCursor(s.getCreatedAt(), s.getId()),
+                page -> page.stream().map(this::convertToResponse).collect(Collectors.toList()));
+    }
+
     /**
      * Converte una Simulation entity in SimulationResponse DTO
      */
@@ -543,7 +756,7 @@ public class SimulationService {
         // Recupera dati simulazione se completata
         List<SimulationResponse.SimulationDataPoint> simulationData = null;
         if (simulation.getStatus() == Simulation.SimulationStatus.COMPLETED) {
-            List<SimulationData> dataPoints = dataRepository.findBySimulationOrderByMonth(simulation);
+            List<SimulationData> dataPoints = dataRepository.findBySimulationOrderByMonth(simulation, simulation.getCreatedAt());
             simulationData = dataPoints.stream()
                     .map(data -> SimulationResponse.SimulationDataPoint.builder()
                             .month(data.getMonth())
@@ -0,0 +1,183 @@
+package it.university.etfpac.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.university.etfpac.entity.UserStatistics;
+import it.university.etfpac.exception.ResourceNotFoundException;
+import it.university.etfpac.repository.PortfolioRepository;
+import it.university.etfpac.repository.SimulationRepository;
+import it.university.etfpac.repository.UserRepository;
+import it.university.etfpac.repository.UserStatisticsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistiche per utente materializzate nella tabella {@code user_statistics}.
+ *
+ * A ogni {@link DomainChangeEvent} di un portfolio o di una simulazione la riga dell'utente viene
+ * ricalcolata con poche query aggregate sugli indici per utente, in una transazione propria dopo il
+ * commit della modifica. Il ricalcolo completo invece di un aggiornamento a delta evita che i
+ * contatori divergano dopo cambi di stato o scritture fallite. La lettura è una ricerca per chiave.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserStatisticsService {
+
+    private static final TypeReference<Map<String, Long>> COUNTS_TYPE = new TypeReference<>() {};
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final UserStatisticsRepository statisticsRepository;
+    private final PortfolioRepository portfolioRepository;
+    private final SimulationRepository simulationRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Statistiche dell'utente; la riga manca solo per utenti senza modifiche dalla sua introduzione
+     */
+    public Map<String, Object> getStatistics(Long userId) {
+        UserStatistics statistics = statisticsRepository.findById(userId)
+                .orElseGet(() -> {
+                    if (!userRepository.existsById(userId)) {
+                        throw new ResourceNotFoundException("Utente non trovato");
+                    }
+                    return refresh(userId);
+                });
+        return toMap(statistics);
+    }
+
+    /**
+     * Eseguito dopo il commit; senza transazione attiva (ad esempio dai job asincroni) subito
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDomainChange(DomainChangeEvent event) {
+        if (event.userId() == null || event.entity() == DomainChangeEvent.Entity.ETF) {
+            return;
+        }
+        try {
+            refresh(event.userId());
+        } catch (RuntimeException e) {
+            // La modifica è già confermata: statistiche non aggiornate non devono farla fallire
+            log.warn("Aggiornamento delle statistiche dell'utente {} fallito: {}", event.userId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Ricalcola e salva la riga dell'utente. Due primi inserimenti concorrenti della stessa riga
+     * fanno fallire il secondo, che viene ripetuto come aggiornamento
+     */
+    public UserStatistics refresh(Long userId) {
+        TransactionTemplate newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return newTransaction.execute(status -> recompute(userId));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private UserStatistics recompute(Long userId) {
+        UserStatistics statistics = statisticsRepository.findForUpdate(userId)
+                .orElseGet(() -> {
+                    UserStatistics created = new UserStatistics();
+                    created.setUserId(userId);
+                    return created;
+                });
+
+        long portfolios = 0;
+        long activePortfolios = 0;
+        BigDecimal initialInvestment = BigDecimal.ZERO;
+        Map<String, Long> byStatus = new TreeMap<>();
+        Map<String, Long> byStrategy = new TreeMap<>();
+        for (PortfolioRepository.UserPortfolioAggregate row : portfolioRepository.aggregateByUser(userId)) {
+            portfolios += row.getPortfolios();
+            activePortfolios += row.getActivePortfolios();
+            initialInvestment = initialInvestment.add(row.getInitialAmount());
+            byStatus.merge(row.getStatus().name().toLowerCase(), row.getPortfolios(), Long::sum);
+            byStrategy.merge(row.getStrategy().name().toLowerCase(), row.getPortfolios(), Long::sum);
+        }
+
+        long simulations = 0;
+        Map<String, Long> simulationsByStatus = new TreeMap<>();
+        for (SimulationRepository.StatusCount row : simulationRepository.countByStatusForUser(userId)) {
+            simulations += row.getCount();
+            simulationsByStatus.put(row.getStatus().name().toLowerCase(), row.getCount());
+        }
+
+        statistics.setTotalPortfolios(portfolios);
+        statistics.setActivePortfolios(activePortfolios);
+        statistics.setTotalInitialInvestment(initialInvestment);
+        statistics.setPortfoliosByStatus(writeCounts(byStatus));
+        statistics.setPortfoliosByStrategy(writeCounts(byStrategy));
+        statistics.setTotalSimulations(simulations);
+        statistics.setSimulationsByStatus(writeCounts(simulationsByStatus));
+        statistics.setBestSimulationId(null);
+        statistics.setBestSimulationName(null);
+        statistics.setBestSharpeRatio(null);
+        simulationRepository.findBestBySharpeRatio(userId)
+                .ifPresent(best -> {
+                    statistics.setBestSimulationId(best.getId());
+                    statistics.setBestSimulationName(best.getName());
+                    statistics.setBestSharpeRatio(best.getSharpeRatio());
+                });
+        statistics.setUpdatedAt(LocalDateTime.now());
+
+        return statisticsRepository.saveAndFlush(statistics);
+    }
+
+    private Map<String, Object> toMap(UserStatistics statistics) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total_portfolios", statistics.getTotalPortfolios());
+        result.put("active_portfolios", statistics.getActivePortfolios());
+        result.put("total_initial_investment", statistics.getTotalInitialInvestment());
+        result.put("portfolios_by_status", readCounts(statistics.getPortfoliosByStatus()));
+        result.put("portfolios_by_strategy", readCounts(statistics.getPortfoliosByStrategy()));
+        result.put("total_simulations", statistics.getTotalSimulations());
+        result.put("simulations_by_status", readCounts(statistics.getSimulationsByStatus()));
+        if (statistics.getBestSimulationId() != null) {
+            Map<String, Object> best = new LinkedHashMap<>();
+            best.put("id", statistics.getBestSimulationId());
+            best.put("name", statistics.getBestSimulationName());
+            best.put("sharpe_ratio", statistics.getBestSharpeRatio());
+            result.put("best_simulation", best);
+        }
+        result.put("updated_at", statistics.getUpdatedAt());
+        return result;
+    }
+
+    private String writeCounts(Map<String, Long> counts) {
+        try {
+            return objectMapper.writeValueAsString(counts);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Serializzazione statistiche utente fallita", e);
+        }
+    }
+
+    private Map<String, Long> readCounts(String counts) {
+        try {
+            return objectMapper.readValue(counts, COUNTS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Lettura statistiche utente fallita", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+-- V4__Create_backtests.sql
+
+-- Riepilogo del backtest interrogabile in colonne, report completo in JSON e serie mensile
+-- compressa (JSON gzip) in una colonna binaria letta solo al recupero del singolo backtest
+CREATE TABLE backtests (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT REFERENCES users(id) ON DELETE CASCADE,
+    name VARCHAR(255) NOT NULL,
+    strategy VARCHAR(30) NOT NULL CHECK (strategy IN ('DCA', 'VALUE_AVERAGING', 'MOMENTUM', 'CONTRARIAN', 'SMART_BETA', 'TACTICAL')),
+    period VARCHAR(10),
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    initial_amount DOUBLE PRECISION NOT NULL,
+    monthly_amount DOUBLE PRECISION NOT NULL,
+    total_return DOUBLE PRECISION,
+    annualized_return DOUBLE PRECISION,
+    volatility DOUBLE PRECISION,
+    sharpe_ratio DOUBLE PRECISION,
+    max_drawdown DOUBLE PRECISION,
+    final_value DOUBLE PRECISION,
+    total_invested DOUBLE PRECISION,
+    report TEXT NOT NULL,
+    series BYTEA NOT NULL,
+    series_points INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_backtests_user_created ON backtests(user_id, created_at DESC);
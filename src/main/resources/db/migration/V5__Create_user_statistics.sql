@@ -0,0 +1,18 @@
+-- V5__Create_user_statistics.sql
+
+-- Statistiche per utente mantenute dall'applicazione a ogni modifica di portfolio e simulazioni;
+-- le righe mancanti (utenti esistenti prima di questa migrazione) vengono calcolate alla prima lettura
+CREATE TABLE user_statistics (
+    user_id BIGINT PRIMARY KEY REFERENCES users(id) ON DELETE CASCADE,
+    total_portfolios BIGINT NOT NULL,
+    active_portfolios BIGINT NOT NULL,
+    total_initial_investment DECIMAL(19,2) NOT NULL,
+    portfolios_by_status TEXT NOT NULL,
+    portfolios_by_strategy TEXT NOT NULL,
+    total_simulations BIGINT NOT NULL,
+    simulations_by_status TEXT NOT NULL,
+    best_simulation_id BIGINT,
+    best_simulation_name VARCHAR(255),
+    best_sharpe_ratio DOUBLE PRECISION,
+    updated_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,5 @@
+-- V6__Create_keyset_pagination_indexes.sql
+
+-- Paginazione keyset dei portfolio di un utente: filtro e ordinamento (created_at, id) dallo stesso indice.
+-- Le simulazioni usano idx_simulations_created_at; a parità di created_at l'ordine per id è un sort incrementale
+CREATE INDEX idx_portfolios_user_created ON portfolios(user_id, is_template, created_at DESC, id DESC);
@@ -0,0 +1,56 @@
+-- V7__Partition_simulation_data.sql
+
+-- simulation_data partizionata per mese di creazione: la conservazione elimina partizioni intere
+-- (SimulationDataRetention) invece di cancellare righe, quindi niente vacuum né gonfiamento degli indici.
+-- La chiave di partizione deve far parte della chiave primaria; l'unicità (simulation_id, month) non è
+-- più imponibile sull'intera tabella e resta come indice (ogni esecuzione scrive la serie una sola volta)
+ALTER TABLE simulation_data RENAME TO simulation_data_legacy;
+ALTER INDEX idx_simulation_data_month RENAME TO idx_simulation_data_legacy_month;
+ALTER INDEX idx_simulation_data_simulation_id RENAME TO idx_simulation_data_legacy_simulation_id;
+ALTER SEQUENCE simulation_data_id_seq OWNED BY NONE;
+
+CREATE TABLE simulation_data (
+    id BIGINT NOT NULL DEFAULT nextval('simulation_data_id_seq'),
+    simulation_id BIGINT NOT NULL REFERENCES simulations(id) ON DELETE CASCADE,
+    month INTEGER NOT NULL,
+    total_value DOUBLE PRECISION NOT NULL,
+    total_invested DOUBLE PRECISION NOT NULL,
+    monthly_investment DOUBLE PRECISION,
+    monthly_return DOUBLE PRECISION,
+    cumulative_return DOUBLE PRECISION,
+    inflation_adjusted_value DOUBLE PRECISION,
+    sharpe_ratio DOUBLE PRECISION,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Copre anche le ricerche per sola simulation_id
+CREATE INDEX idx_simulation_data_month ON simulation_data(simulation_id, month);
+
+-- Una partizione al mese dalla simulazione più vecchia a tre mesi avanti; le successive le crea il job
+DO $$
+DECLARE
+    partition_month DATE := date_trunc('month', COALESCE((SELECT MIN(created_at) FROM simulations), CURRENT_TIMESTAMP));
+    last_month DATE := date_trunc('month', CURRENT_TIMESTAMP + INTERVAL '3 months');
+BEGIN
+    WHILE partition_month <= last_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF simulation_data FOR VALUES FROM (%L) TO (%L)',
+                       'simulation_data_' || to_char(partition_month, 'YYYY_MM'),
+                       partition_month,
+                       (partition_month + INTERVAL '1 month')::date);
+        partition_month := (partition_month + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+-- Rete di sicurezza se il job non ha creato in tempo la partizione del mese corrente
+CREATE TABLE simulation_data_default PARTITION OF simulation_data DEFAULT;
+
+-- Le righe esistenti prendono la data di creazione della loro simulazione
+INSERT INTO simulation_data (id, simulation_id, month, total_value, total_invested, monthly_investment,
+                             monthly_return, cumulative_return, inflation_adjusted_value, sharpe_ratio, created_at)
+SELECT d.id, d.simulation_id, d.month, d.total_value, d.total_invested, d.monthly_investment,
+       d.monthly_return, d.cumulative_return, d.inflation_adjusted_value, d.sharpe_ratio, s.created_at
+  FROM simulation_data_legacy d
+  JOIN simulations s ON s.id = d.simulation_id;
+
+DROP TABLE simulation_data_legacy;
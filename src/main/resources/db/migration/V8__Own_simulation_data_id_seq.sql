@@ -0,0 +1,5 @@
+-- V8__Own_simulation_data_id_seq.sql
+
+-- V7 ha staccato la sequenza dalla tabella legacy prima di eliminarla: torna di proprietà della nuova
+-- colonna id, così pg_get_serial_sequence la trova e viene eliminata insieme alla tabella
+ALTER SEQUENCE simulation_data_id_seq OWNED BY simulation_data.id;
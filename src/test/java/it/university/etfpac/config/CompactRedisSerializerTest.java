@@ -0,0 +1,146 @@
+package it.university.etfpac.config;
+
+import it.university.etfpac.dto.response.*;
+import it.university.etfpac.service.BacktestService;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Ogni tipo salvato nelle cache Redis deve tornare identico dopo serializzazione e lettura:
+ * un DTO non ricostruibile non genera errori visibili, solo cache che non restituiscono mai un hit.
+ */
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(1024);
+
+    private Object roundTrip(Object value) {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    @Test
+    void simulationResponse() {
+        SimulationResponse response = simulation(360);
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void portfolioResponse() {
+        PortfolioResponse response = portfolio(1L);
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void portfolioTemplates() {
+        List<PortfolioResponse> templates = new ArrayList<>(List.of(portfolio(1L), portfolio(2L)));
+        assertEquals(templates, roundTrip(templates));
+    }
+
+    @Test
+    void directSimulationResponse() {
+        DirectSimulationResponse response = DirectSimulationResponse.builder()
+                .simulationData(IntStream.rangeClosed(0, 360)
+                        .mapToObj(month -> DirectSimulationResponse.DataPoint.builder()
+                                .month(month).totalValue(10_000.0 + month).totalInvested(10_000.0)
+                                .monthlyReturn(0.5).cumulativeReturn(month * 0.1).monthlyInvestment(500.0)
+                                .inflationAdjustedValue(9_000.0 + month).build())
+                        .toList())
+                .results(DirectSimulationResponse.Results.builder()
+                        .finalValue(250_000.0).totalInvested(190_000.0).cumulativeReturn(31.5)
+                        .volatility(14.2).maxDrawdown(-22.0).sharpeRatio(0.8).build())
+                .seed(42L)
+                .build();
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void monteCarloResponse() {
+        MonteCarloResponse response = MonteCarloResponse.builder()
+                .paths(10_000).months(120).seed(7L).sampling("sobol").antithetic(true).controlVariate(true)
+                .meanFinalValue(120_000.0).standardError(150.0).probabilityOfLoss(0.08)
+                .distribution(List.of(MonteCarloResponse.MonthDistribution.builder()
+                        .month(12).p5(9_000.0).p25(10_000.0).p50(11_000.0).p75(12_000.0).p95(14_000.0).build()))
+                .build();
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void scenarioComparisonResponse() {
+        ScenarioComparisonResponse response = ScenarioComparisonResponse.builder()
+                .seed(3L).scenarios(5_000).months(240).universeSize(6).strategy("DCA")
+                .portfolios(List.of(ScenarioComparisonResponse.PortfolioOutcome.builder()
+                        .name("A").meanFinalValue(100_000.0).p5FinalValue(60_000.0).medianFinalValue(95_000.0)
+                        .p95FinalValue(160_000.0).meanTotalInvested(80_000.0).probabilityOfLoss(0.1)
+                        .probabilityBeatsFirst(0.5).build()))
+                .build();
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void efficientFrontierResponse() {
+        EfficientFrontierResponse.FrontierPoint point = EfficientFrontierResponse.FrontierPoint.builder()
+                .expectedReturn(0.07).volatility(0.12).sharpeRatio(0.4)
+                .weights(Map.of("sp500", 0.6, "bonds", 0.4)).build();
+        EfficientFrontierResponse response = EfficientFrontierResponse.builder()
+                .catalogVersion("v3").universe(List.of("sp500", "bonds")).riskFreeRate(0.02)
+                .minVariance(point).maxSharpe(point).frontier(List.of(point)).build();
+        assertEquals(response, roundTrip(response));
+    }
+
+    @Test
+    void backtestSummary() {
+        BacktestService.BacktestResults results = BacktestService.BacktestResults.builder()
+                .totalReturn(45.0).annualizedReturn(7.7).volatility(15.0).sharpeRatio(0.6)
+                .maxDrawdown(-30.0).finalValue(145_000.0).build();
+        BacktestService.BacktestSummary summary = BacktestService.BacktestSummary.builder()
+                .backtestId(9L).results(results).benchmarkResults(results)
+                .performanceAttribution(Map.of("sp500", 30.0)).executedAt(new Date()).build();
+        assertEquals(summary, roundTrip(summary));
+    }
+
+    private static SimulationResponse simulation(int months) {
+        return SimulationResponse.builder()
+                .id(1L).name("Piano").initialAmount(10_000.0).monthlyAmount(500.0).investmentPeriod(months)
+                .frequency("monthly").strategy("dca").etfAllocation(Map.of("sp500", 60.0, "bonds", 40.0))
+                .riskTolerance("moderate").rebalanceFrequency("annual").automaticRebalance(true)
+                .status("completed").finalValue(250_000.0).sharpeRatio(0.8)
+                .simulationData(IntStream.rangeClosed(0, months)
+                        .mapToObj(month -> SimulationResponse.SimulationDataPoint.builder()
+                                .month(month).totalValue(10_000.0 + month).totalInvested(10_000.0)
+                                .monthlyInvestment(500.0).monthlyReturn(0.4).cumulativeReturn(month * 0.1)
+                                .inflationAdjustedValue(9_000.0).sharpeRatio(0.7).build())
+                        .toList())
+                .createdAt(LocalDateTime.of(2026, 1, 15, 10, 30, 0, 123_456_000))
+                .updatedAt(LocalDateTime.of(2026, 1, 15, 10, 31))
+                .build();
+    }
+
+    private static PortfolioResponse portfolio(Long id) {
+        return PortfolioResponse.builder()
+                .id(id).name("Bilanciato").description("60/40").userId(3L).userName("Mario")
+                .initialAmount(new BigDecimal("10000.00")).monthlyAmount(new BigDecimal("500.00"))
+                .investmentPeriodMonths(120).frequency("monthly").strategy("dca").rebalanceFrequency("quarterly")
+                .automaticRebalance(true)
+                .etfAllocations(Map.of("sp500", new BigDecimal("60.00"), "bonds", new BigDecimal("40.00")))
+                .etfAllocationDetails(List.of(PortfolioResponse.ETFAllocationDetail.builder()
+                        .etfId("sp500").etfName("S&P 500").ticker("CSPX").allocationPercentage(new BigDecimal("60.00"))
+                        .sector("Equity").riskLevel("MEDIUM").expenseRatio(0.07).expectedReturn(10.5).build()))
+                .active(true).isTemplate(false).status("active")
+                .createdAt(LocalDateTime.of(2026, 2, 1, 9, 0)).updatedAt(LocalDateTime.of(2026, 2, 2, 9, 0))
+                .totalAllocationPercentage(new BigDecimal("100.00")).allocationValid(true)
+                .estimatedTotalInvestment(new BigDecimal("70000.00")).editable(false)
+                .expectedReturn(new BigDecimal("0.07")).expectedVolatility(new BigDecimal("0.12")).riskLevel("MEDIO")
+                .recentSimulations(List.of(PortfolioResponse.SimulationSummary.builder()
+                        .simulationId(5L).simulationName("Test").status("completed").finalReturn(12.0)
+                        .createdAt(LocalDateTime.of(2026, 2, 3, 9, 0)).build()))
+                .build();
+    }
+}
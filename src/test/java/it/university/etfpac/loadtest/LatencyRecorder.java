@@ -0,0 +1,91 @@
+package it.university.etfpac.loadtest;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Raccoglie latenze ed errori per scenario e produce il report del test di carico.
+ *
+ * Le latenze partono dall'istante di invio pianificato, non da quello effettivo, così i ritardi
+ * accumulati dal client quando il server rallenta non vengono nascosti (coordinated omission).
+ */
+class LatencyRecorder {
+
+    private final Map<LoadTestSettings.Scenario, ConcurrentLinkedQueue<Long>> latencies =
+            new EnumMap<>(LoadTestSettings.Scenario.class);
+    private final Map<LoadTestSettings.Scenario, AtomicLong> errors = new EnumMap<>(LoadTestSettings.Scenario.class);
+
+    LatencyRecorder() {
+        for (LoadTestSettings.Scenario scenario : LoadTestSettings.Scenario.values()) {
+            latencies.put(scenario, new ConcurrentLinkedQueue<>());
+            errors.put(scenario, new AtomicLong());
+        }
+    }
+
+    void record(LoadTestSettings.Scenario scenario, long latencyNanos, boolean success) {
+        latencies.get(scenario).add(latencyNanos);
+        if (!success) {
+            errors.get(scenario).incrementAndGet();
+        }
+    }
+
+    long totalRequests() {
+        return latencies.values().stream().mapToLong(ConcurrentLinkedQueue::size).sum();
+    }
+
+    long totalErrors() {
+        return errors.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    double errorRate() {
+        long total = totalRequests();
+        return total > 0 ? (double) totalErrors() / total : 0.0;
+    }
+
+    Map<String, Object> report(LoadTestSettings settings, double elapsedSeconds) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("targetRps", settings.rps());
+        report.put("durationSeconds", elapsedSeconds);
+        report.put("totalRequests", totalRequests());
+        report.put("throughputRps", totalRequests() / elapsedSeconds);
+        report.put("errorRate", errorRate());
+        report.put("overall", summarize(latencies.values().stream()
+                .flatMap(ConcurrentLinkedQueue::stream)
+                .mapToLong(Long::longValue)
+                .toArray(), totalErrors(), elapsedSeconds));
+
+        Map<String, Object> scenarios = new LinkedHashMap<>();
+        for (LoadTestSettings.Scenario scenario : settings.mix().keySet()) {
+            long[] values = latencies.get(scenario).stream().mapToLong(Long::longValue).toArray();
+            scenarios.put(scenario.key(), summarize(values, errors.get(scenario).get(), elapsedSeconds));
+        }
+        report.put("scenarios", scenarios);
+        return report;
+    }
+
+    private static Map<String, Object> summarize(long[] values, long errorCount, double elapsedSeconds) {
+        Arrays.sort(values);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", values.length);
+        summary.put("errors", errorCount);
+        summary.put("errorRate", values.length > 0 ? (double) errorCount / values.length : 0.0);
+        summary.put("throughputRps", values.length / elapsedSeconds);
+        summary.put("p50Ms", percentileMillis(values, 0.50));
+        summary.put("p90Ms", percentileMillis(values, 0.90));
+        summary.put("p99Ms", percentileMillis(values, 0.99));
+        summary.put("maxMs", values.length > 0 ? values[values.length - 1] / 1_000_000.0 : 0.0);
+        return summary;
+    }
+
+    private static double percentileMillis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,69 @@
+package it.university.etfpac.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parametri del test di carico, letti dalle system property (-Dloadtest.*).
+ *
+ * loadtest.mix assegna un peso a ciascuno scenario, es. "simulation-run:30,backtest-run:20,portfolio-simulate:20,etf-read:30".
+ */
+record LoadTestSettings(int rps,
+                        int durationSeconds,
+                        int warmupSeconds,
+                        Map<Scenario, Integer> mix,
+                        double maxErrorRate,
+                        String reportPath) {
+
+    enum Scenario {
+        SIMULATION_RUN("simulation-run"),
+        BACKTEST_RUN("backtest-run"),
+        PORTFOLIO_SIMULATE("portfolio-simulate"),
+        ETF_READ("etf-read");
+
+        private final String key;
+
+        Scenario(String key) {
+            this.key = key;
+        }
+
+        String key() {
+            return key;
+        }
+
+        static Scenario fromKey(String key) {
+            for (Scenario scenario : values()) {
+                if (scenario.key.equals(key.trim())) {
+                    return scenario;
+                }
+            }
+            throw new IllegalArgumentException("Scenario di carico sconosciuto: " + key);
+        }
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.rps", 20),
+                Integer.getInteger("loadtest.durationSeconds", 60),
+                Integer.getInteger("loadtest.warmupSeconds", 10),
+                parseMix(System.getProperty("loadtest.mix",
+                        "simulation-run:30,backtest-run:15,portfolio-simulate:20,etf-read:35")),
+                Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.01")),
+                System.getProperty("loadtest.report", "target/loadtest-report.json"));
+    }
+
+    private static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Scenario.fromKey(parts[0]), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix deve contenere almeno uno scenario con peso positivo");
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,251 @@
+package it.university.etfpac.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test di carico a ciclo aperto contro l'applicazione completa con Postgres e Redis in Testcontainers.
+ *
+ * Escluso dalla build normale; si avvia con {@code mvn -P loadtest test} e scrive il report JSON
+ * (throughput, p50/p90/p99 ed error rate per scenario) nel percorso indicato da loadtest.report.
+ */
+@Tag("loadtest")
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("docker")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SimulationLoadTest {
+
+    private static final String[] STRATEGIES = {"DCA", "VALUE_AVERAGING", "MOMENTUM", "CONTRARIAN", "SMART_BETA", "TACTICAL"};
+    private static final String[] ETF_IDS = {"world_equity", "sp500", "europe", "bonds", "emerging", "real_estate"};
+    private static final String[] BACKTEST_PERIODS = {"1Y", "3Y", "5Y", "10Y"};
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("etfpac_db")
+            .withUsername("etfpac_user")
+            .withPassword("etfpac_password");
+
+    @Container
+    static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    @DynamicPropertySource
+    static void containerProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.data.redis.host", REDIS::getHost);
+        registry.add("spring.data.redis.port", () -> REDIS.getMappedPort(6379));
+        registry.add("logging.file.name", () -> "target/loadtest-app.log");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(16))
+            .build();
+
+    private long portfolioId;
+
+    @BeforeAll
+    void createFixtures() throws Exception {
+        Map<String, Object> portfolio = new LinkedHashMap<>();
+        portfolio.put("name", "Portfolio load test");
+        portfolio.put("userId", 1);
+        portfolio.put("initialAmount", 10000);
+        portfolio.put("monthlyAmount", 500);
+        portfolio.put("investmentPeriodMonths", 120);
+        portfolio.put("frequency", "MONTHLY");
+        portfolio.put("strategy", "DCA");
+        portfolio.put("rebalanceFrequency", "QUARTERLY");
+        portfolio.put("etfAllocations", Map.of("world_equity", 60, "bonds", 25, "emerging", 15));
+
+        HttpResponse<String> response = client.send(post("/api/v1/portfolios", portfolio),
+                HttpResponse.BodyHandlers.ofString());
+        JsonNode body = objectMapper.readTree(response.body());
+        portfolioId = body.path("data").path("id").asLong();
+        assertTrue(portfolioId > 0, "Creazione portfolio di test fallita: " + response.body());
+    }
+
+    @Test
+    void sustainsConfiguredRequestMix() throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+        if (settings.warmupSeconds() > 0) {
+            drive(settings, settings.warmupSeconds(), new LatencyRecorder(), new Random(7));
+        }
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        double elapsed = drive(settings, settings.durationSeconds(), recorder, new Random(42));
+
+        Map<String, Object> report = recorder.report(settings, elapsed);
+        Path reportPath = Path.of(settings.reportPath());
+        Files.createDirectories(reportPath.toAbsolutePath().getParent());
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportPath.toFile(), report);
+
+        assertTrue(recorder.errorRate() <= settings.maxErrorRate(),
+                String.format("Error rate %.4f oltre la soglia %.4f (report: %s)",
+                        recorder.errorRate(), settings.maxErrorRate(), reportPath));
+    }
+
+    /**
+     * Invia richieste a ritmo costante indipendentemente dalle risposte e attende quelle in volo
+     */
+    private double drive(LoadTestSettings settings, int seconds, LatencyRecorder recorder, Random random)
+            throws InterruptedException {
+        long periodNanos = 1_000_000_000L / settings.rps();
+        long totalRequests = (long) settings.rps() * seconds;
+        List<LoadTestSettings.Scenario> wheel = weightedWheel(settings.mix());
+        List<CompletableFuture<?>> inFlight = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong sent = new AtomicLong();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> {
+            long index = sent.getAndIncrement();
+            if (index >= totalRequests) {
+                return;
+            }
+            long intendedStart = start + index * periodNanos;
+            LoadTestSettings.Scenario scenario = wheel.get(random.nextInt(wheel.size()));
+            try {
+                inFlight.add(client.sendAsync(buildRequest(scenario, random), HttpResponse.BodyHandlers.discarding())
+                        .handle((response, error) -> {
+                            boolean success = error == null && response.statusCode() < 400;
+                            recorder.record(scenario, System.nanoTime() - intendedStart, success);
+                            return null;
+                        }));
+            } catch (RuntimeException e) {
+                // Un'eccezione non gestita interromperebbe lo scheduling periodico
+                recorder.record(scenario, System.nanoTime() - intendedStart, false);
+            }
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+        while (sent.get() < totalRequests) {
+            Thread.sleep(100);
+        }
+        scheduler.shutdownNow();
+
+        try {
+            CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Le richieste non completate restano fuori dal report ma le risposte registrate sono valide
+        }
+        return (System.nanoTime() - start) / 1_000_000_000.0;
+    }
+
+    private HttpRequest buildRequest(LoadTestSettings.Scenario scenario, Random random) {
+        return switch (scenario) {
+            case SIMULATION_RUN -> post("/api/v1/simulations/run", simulationBody(random));
+            case BACKTEST_RUN -> post("/api/v1/backtest/run", backtestBody(random));
+            case PORTFOLIO_SIMULATE -> post("/api/v1/portfolios/" + portfolioId + "/simulate?months="
+                    + (12 * (1 + random.nextInt(20))), Map.of());
+            case ETF_READ -> random.nextBoolean()
+                    ? get("/api/v1/etfs")
+                    : get("/api/v1/etfs/" + ETF_IDS[random.nextInt(ETF_IDS.length)]);
+        };
+    }
+
+    private Map<String, Object> simulationBody(Random random) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", "Load test");
+        body.put("initialAmount", 1000 * (1 + random.nextInt(10)));
+        body.put("monthlyAmount", 100 * (1 + random.nextInt(10)));
+        body.put("investmentPeriod", 12 * (1 + random.nextInt(30)));
+        body.put("frequency", "MONTHLY");
+        body.put("strategy", STRATEGIES[random.nextInt(STRATEGIES.length)]);
+        body.put("etfAllocation", allocation(random));
+        body.put("riskTolerance", "MODERATE");
+        body.put("rebalanceFrequency", "QUARTERLY");
+        body.put("userId", 1);
+        return body;
+    }
+
+    private Map<String, Object> backtestBody(Random random) {
+        String period = BACKTEST_PERIODS[random.nextInt(BACKTEST_PERIODS.length)];
+        int years = Integer.parseInt(period.substring(0, period.length() - 1));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", "Load test backtest");
+        body.put("strategy", STRATEGIES[random.nextInt(STRATEGIES.length)]);
+        body.put("startDate", LocalDate.now().minusYears(years).toString());
+        body.put("endDate", LocalDate.now().minusMonths(1).toString());
+        body.put("initialAmount", 10000);
+        body.put("monthlyAmount", 500);
+        body.put("etfAllocation", allocation(random));
+        body.put("frequency", "MONTHLY");
+        body.put("period", period);
+        body.put("userId", 1);
+        return body;
+    }
+
+    private Map<String, Double> allocation(Random random) {
+        String first = ETF_IDS[random.nextInt(ETF_IDS.length)];
+        String second = ETF_IDS[random.nextInt(ETF_IDS.length)];
+        if (first.equals(second)) {
+            return Map.of(first, 100.0);
+        }
+        double weight = 10.0 * (1 + random.nextInt(9));
+        return Map.of(first, weight, second, 100.0 - weight);
+    }
+
+    private static List<LoadTestSettings.Scenario> weightedWheel(Map<LoadTestSettings.Scenario, Integer> mix) {
+        List<LoadTestSettings.Scenario> wheel = new ArrayList<>();
+        mix.forEach((scenario, weight) -> wheel.addAll(Collections.nCopies(weight, scenario)));
+        return wheel;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package it.university.etfpac.service;
+
+import it.university.etfpac.dto.request.PortfolioRequest;
+import it.university.etfpac.entity.ETF;
+import it.university.etfpac.entity.Portfolio;
+import it.university.etfpac.entity.User;
+import it.university.etfpac.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.when;
+
+/**
+ * ETag e Last-Modified del portfolio derivano da updated_at: ogni modifica visibile nella risposta
+ * deve farlo avanzare, anche quando cambia solo la collezione delle allocazioni.
+ */
+@ExtendWith(MockitoExtension.class)
+class PortfolioServiceTest {
+
+    private static final LocalDateTime LAST_UPDATE = LocalDateTime.of(2026, 3, 1, 12, 0);
+
+    @Mock private PortfolioRepository portfolioRepository;
+    @Mock private UserRepository userRepository;
+    @Mock private ETFRepository etfRepository;
+    @Mock private SimulationRepository simulationRepository;
+    @Mock private ETFCatalog etfCatalog;
+    @Mock private PortfolioRiskEngine riskEngine;
+    @Mock private PortfolioOptimizer optimizer;
+    @Mock private ApplicationEventPublisher eventPublisher;
+    @Mock private UserStatisticsService userStatisticsService;
+
+    @InjectMocks
+    private PortfolioService portfolioService;
+
+    private final ETF sp500 = etf("sp500");
+    private final ETF bonds = etf("bonds");
+    private Portfolio portfolio;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(3L);
+        portfolio = Portfolio.builder()
+                .id(1L).name("Bilanciato").user(user)
+                .initialAmount(new BigDecimal("10000.00")).monthlyAmount(new BigDecimal("500.00"))
+                .investmentPeriodMonths(120)
+                .frequency(Portfolio.InvestmentFrequency.MONTHLY)
+                .strategy(Portfolio.InvestmentStrategy.DCA)
+                .rebalanceFrequency(Portfolio.RebalanceFrequency.QUARTERLY)
+                .status(Portfolio.PortfolioStatus.DRAFT)
+                .etfAllocations(new HashMap<>(Map.of(sp500, new BigDecimal("60.00"), bonds, new BigDecimal("40.00"))))
+                .build();
+        portfolio.setUpdatedAt(LAST_UPDATE);
+
+        when(portfolioRepository.findById(1L)).thenReturn(Optional.of(portfolio));
+        when(portfolioRepository.save(any(Portfolio.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(etfCatalog.contains(any())).thenReturn(true);
+        when(etfRepository.findAllById(any())).thenReturn(List.of(sp500, bonds));
+        when(riskEngine.evaluate(anyMap())).thenReturn(PortfolioRiskMetrics.builder().build());
+    }
+
+    @Test
+    void allocationOnlyUpdateAdvancesUpdatedAt() {
+        portfolioService.updatePortfolio(1L, request(Map.of("sp500", new BigDecimal("80"), "bonds", new BigDecimal("20"))));
+
+        assertTrue(portfolio.getUpdatedAt().isAfter(LAST_UPDATE));
+        assertEquals(0, new BigDecimal("80").compareTo(portfolio.getEtfAllocations().get(sp500)));
+    }
+
+    @Test
+    void unchangedAllocationsLeaveUpdatedAtToHibernate() {
+        portfolioService.updatePortfolio(1L, request(Map.of("sp500", new BigDecimal("60"), "bonds", new BigDecimal("40"))));
+
+        assertEquals(LAST_UPDATE, portfolio.getUpdatedAt());
+    }
+
+    private PortfolioRequest request(Map<String, BigDecimal> allocations) {
+        PortfolioRequest request = new PortfolioRequest();
+        request.setName(portfolio.getName());
+        request.setInitialAmount(portfolio.getInitialAmount());
+        request.setMonthlyAmount(portfolio.getMonthlyAmount());
+        request.setInvestmentPeriodMonths(portfolio.getInvestmentPeriodMonths());
+        request.setEtfAllocations(allocations);
+        return request;
+    }
+
+    private static ETF etf(String id) {
+        ETF etf = new ETF();
+        etf.setId(id);
+        etf.setName(id);
+        etf.setRisk(ETF.RiskLevel.MEDIUM);
+        return etf;
+    }
+}